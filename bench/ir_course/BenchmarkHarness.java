@@ -0,0 +1,127 @@
+/*
+ * Minimal benchmark harness with machine-readable output
+ */
+package ir_course;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs each benchmark for a number of warmup and measured iterations on the calling thread
+ * and records the time of every measured iteration. Results are printed as they finish and
+ * can be written as a JSON array, one object per benchmark and parameter combination, so
+ * two runs can be diffed.
+ */
+public class BenchmarkHarness {
+
+    public interface Benchmark {
+        // returns the number of operations done (documents, tokens, queries...), used for ops/s
+        long run() throws Exception;
+    }
+
+    public static class Result {
+        final String name;
+        final Map<String, String> params;
+        final long[] nanos;
+        final long operations;
+
+        Result(String name, Map<String, String> params, long[] nanos, long operations) {
+            this.name = name;
+            this.params = params;
+            this.nanos = nanos;
+            this.operations = operations;
+        }
+
+        double meanMillis() {
+            long sum = 0;
+            for (long n : nanos) sum += n;
+            return sum / 1e6 / nanos.length;
+        }
+
+        double minMillis() {
+            long min = Long.MAX_VALUE;
+            for (long n : nanos) min = Math.min(min, n);
+            return min / 1e6;
+        }
+
+        double stddevMillis() {
+            double mean = meanMillis();
+            double sum = 0;
+            for (long n : nanos) sum += (n / 1e6 - mean) * (n / 1e6 - mean);
+            return Math.sqrt(sum / nanos.length);
+        }
+
+        // operations per second of a single iteration
+        double opsPerSecond() {
+            return operations / (meanMillis() / 1e3);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %-40s %10.3f ms +- %8.3f (min %10.3f) %12.1f ops/s",
+                    name, params, meanMillis(), stddevMillis(), minMillis(), opsPerSecond());
+        }
+    }
+
+    private final int warmup;
+    private final int iterations;
+    private final List<Result> results = new ArrayList<>();
+
+    public BenchmarkHarness(int warmup, int iterations) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+    }
+
+    // params are "key", "value" pairs describing the configuration
+    public Result run(String name, Benchmark benchmark, String... params) throws Exception {
+        Map<String, String> paramMap = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < params.length; i += 2) {
+            paramMap.put(params[i], params[i + 1]);
+        }
+        for (int i = 0; i < warmup; i++) {
+            benchmark.run();
+        }
+        long[] nanos = new long[iterations];
+        long operations = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            operations = benchmark.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Result result = new Result(name, paramMap, nanos, operations);
+        results.add(result);
+        System.out.println(result);
+        return result;
+    }
+
+    public void writeJson(String path) throws IOException {
+        try (Writer out = new FileWriter(path)) {
+            out.write("[\n");
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                out.write("  {\"benchmark\": " + quote(r.name) + ", \"params\": {");
+                int p = 0;
+                for (Map.Entry<String, String> e : r.params.entrySet()) {
+                    out.write((p++ > 0 ? ", " : "") + quote(e.getKey()) + ": " + quote(e.getValue()));
+                }
+                out.write(String.format("}, \"iterations\": %d, \"meanMs\": %.6f, \"stddevMs\": %.6f, \"minMs\": %.6f, "
+                                + "\"operations\": %d, \"opsPerSecond\": %.3f, \"samplesMs\": [",
+                        r.nanos.length, r.meanMillis(), r.stddevMillis(), r.minMillis(), r.operations, r.opsPerSecond()));
+                for (int j = 0; j < r.nanos.length; j++) {
+                    out.write((j > 0 ? ", " : "") + String.format("%.6f", r.nanos[j] / 1e6));
+                }
+                out.write("]}" + (i + 1 < results.size() ? "," : "") + "\n");
+            }
+            out.write("]\n");
+        }
+    }
+
+    static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
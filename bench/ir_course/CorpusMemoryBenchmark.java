@@ -0,0 +1,70 @@
+/*
+ * Heap taken by the parsed collection, as DocumentInCollection objects and as a ColumnarCorpus
+ */
+package ir_course;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+
+/**
+ * Parses the corpus replicated n times (so every copy has its own strings) and keeps the
+ * result, once as the parser's list of DocumentInCollection and once as a ColumnarCorpus
+ * built while parsing, and prints the retained heap per document of both, measured as
+ * the used heap after full collections. Fails if the columnar documents differ from the
+ * parsed documents.
+ *
+ * usage: CorpusMemoryBenchmark [corpus] [copies]
+ */
+public class CorpusMemoryBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String corpus = args.length > 0 ? args[0] : SearchSuite.corpusPath;
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        DocumentCollectionParser check = new DocumentCollectionParser();
+        check.parse(corpus);
+        List<DocumentInCollection> parsed = check.getDocuments();
+        ColumnarCorpus columns = ColumnarCorpus.copyOf(parsed);
+        int i = 0;
+        for (DocumentInCollection doc : parsed) {
+            if (!doc.toString().equals(columns.get(i++).toString())) {
+                throw new IllegalStateException("Columnar document " + (i - 1) + " differs: " + columns.get(i - 1));
+            }
+        }
+        parsed = null;
+        columns = null;
+        check = null;
+
+        File xml = CorpusScaling.replicateXml(new File(corpus), copies);
+        long before = usedHeap();
+        DocumentCollectionParser parser = new DocumentCollectionParser();
+        parser.parse(xml.getPath());
+        List<DocumentInCollection> objects = parser.getDocuments();
+        long objectBytes = usedHeap() - before;
+        int size = objects.size();
+        objects = null;
+        parser = null;
+
+        before = usedHeap();
+        ColumnarCorpus.Builder builder = new ColumnarCorpus.Builder();
+        new DocumentCollectionParser(builder).parse(xml.getPath());
+        ColumnarCorpus columnar = builder.build();
+        builder = null;
+        long columnarBytes = usedHeap() - before;
+
+        System.out.println(String.format("%d documents (%d copies of %s)", size, copies, corpus));
+        System.out.println(String.format("LinkedList<DocumentInCollection> %8.1f bytes/doc", (double) objectBytes / size));
+        System.out.println(String.format("ColumnarCorpus                   %8.1f bytes/doc", (double) columnarBytes / columnar.size()));
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Larger test corpora made by replicating the course corpus
+ */
+package ir_course;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replicates the items of a corpus n times, either as a new XML file for the parser or as
+ * a document list for the analyzers and the indexer. Copies get their own ids so they
+ * stay distinct documents.
+ */
+public class CorpusScaling {
+
+    private static final String OPEN = "<results>";
+    private static final String CLOSE = "</results>";
+
+    private CorpusScaling() {
+    }
+
+    // corpus itself for n == 1, otherwise a temporary file with the items repeated n times
+    public static File replicateXml(File corpus, int n) throws IOException {
+        if (n == 1) {
+            return corpus;
+        }
+        String xml = Files.toString(corpus, Charsets.UTF_8);
+        int start = xml.indexOf(OPEN) + OPEN.length();
+        int end = xml.lastIndexOf(CLOSE);
+        byte[] head = xml.substring(0, start).getBytes(Charsets.UTF_8);
+        byte[] items = xml.substring(start, end).getBytes(Charsets.UTF_8);
+        byte[] tail = xml.substring(end).getBytes(Charsets.UTF_8);
+
+        File file = File.createTempFile("corpus-" + n + "x-", ".xml");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(head);
+            for (int i = 0; i < n; i++) {
+                out.write(items);
+            }
+            out.write(tail);
+        }
+        return file;
+    }
+
+    public static List<DocumentInCollection> replicate(List<DocumentInCollection> docs, int n) {
+        List<DocumentInCollection> copies = new ArrayList<>(docs.size() * n);
+        for (int i = 0; i < n; i++) {
+            for (DocumentInCollection doc : docs) {
+                DocumentInCollection copy = new DocumentInCollection(doc.getTitle(), doc.getAbstractText(),
+                        doc.getSearchTaskNumber(), doc.getQuery(), doc.isRelevant());
+                copy.setId(i == 0 ? doc.getId() : doc.getId() + "/" + i);
+                copies.add(copy);
+            }
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Latency and ranking quality of the title+abstract query modes
+ */
+package ir_course;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the topic queries in every fields mode on a RAM index:
+ *   abstract  the terms in the abstract only (the default)
+ *   both      one clause per term and field, title and abstract scores are added
+ *   dismax    one DisjunctionMaxQuery per term over both fields
+ * and prints for each the PR curve (TikZ addplot), MAP/R-precision/P@10/nDCG@10, the mean
+ * postings per query and the query latency of searchTopic, which includes evaluation.
+ * Any further arguments (e.g. bm25, PORTER, titleBoost=2, tieBreaker=0.3) are passed on
+ * to every mode.
+ *
+ * usage: FieldModeBenchmark [corpus] [rounds] [arguments...]
+ */
+public class FieldModeBenchmark {
+
+    public static void main(String[] args) {
+        String corpus = args.length > 0 ? args[0] : SearchSuite.corpusPath;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        List<String> extraArgs = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : new ArrayList<String>();
+
+        for (String mode : new String[]{LuceneSearchApp.FIELDS_ABSTRACT, LuceneSearchApp.FIELDS_BOTH, LuceneSearchApp.FIELDS_DISMAX}) {
+            List<String> argList = new ArrayList<>(Arrays.asList(corpus, LuceneSearchApp.STORAGE + "=ram",
+                    LuceneSearchApp.FIELDS + "=" + mode, LuceneSearchApp.METRICS, LuceneSearchApp.QUERY_METRICS + "=on"));
+            argList.addAll(extraArgs);
+            LuceneSearchApp engine = new LuceneSearchApp();
+            engine.configure(argList);
+            engine.ensureIndex(corpus, argList);
+
+            // quality, MAP etc. go to stderr
+            System.err.print(mode + " ");
+            System.out.println(mode + ": " + engine.runQueries(argList).trim());
+            HistogramMetrics counts = (HistogramMetrics) engine.getQueryMetrics();
+            double postings = counts.histogram(QueryMetrics.Counter.POSTINGS).mean();
+
+            engine.openSearcher(0);
+            for (int round = 0; round < rounds / 10 + 1; round++) {
+                search(engine);
+            }
+            int n = LuceneSearchApp.BENCHMARK_QUERIES.length;
+            long[] latencies = new long[rounds * n];
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < n; i++) {
+                    long queryStart = System.nanoTime();
+                    engine.searchTopic(Arrays.asList(LuceneSearchApp.BENCHMARK_QUERIES[i]));
+                    latencies[round * n + i] = System.nanoTime() - queryStart;
+                }
+            }
+            long wall = System.nanoTime() - start;
+            engine.closeSearcher();
+            System.out.println(String.format("%-8s postings/query=%.1f %s", mode, postings, new LatencyStats(latencies, wall)));
+        }
+    }
+
+    private static void search(LuceneSearchApp engine) {
+        for (String[] terms : LuceneSearchApp.BENCHMARK_QUERIES) {
+            engine.searchTopic(Arrays.asList(terms));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Benchmarks for the parse, analyze, index and search hot paths
+ */
+package ir_course;
+
+import com.google.common.io.Files;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.SimpleAnalyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.util.Version;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the benchmark groups over the corpus replicated 1x, 10x (and 100x if asked for):
+ *   parse    DocumentCollectionParser.parse over the XML file
+ *   analyze  each analyzer over all abstracts
+ *   index    LuceneSearchApp.index into a fresh directory, analyzing or replaying
+ *            pre-analyzed tokens
+ *   search   the benchmark queries under each similarity, with and without the query
+ *            result cache (ops = queries)
+ *
+ * usage: HotPathBenchmarks [corpus] [scales=1,10,100] [groups=parse,analyze,index,search]
+ *                          [warmup=2] [iterations=5] [out=benchmark-results.json]
+ */
+public class HotPathBenchmarks {
+
+    private static final String[] SIMILARITIES = {"default", "bm25", "more-like-vsm"};
+
+    public static void main(String[] args) throws Exception {
+        List<String> argList = Arrays.asList(args);
+        String corpus = args.length > 0 && !args[0].contains("=") ? args[0] : SearchSuite.corpusPath;
+        List<String> groups = Arrays.asList(
+                LuceneSearchApp.stringArgument(argList, "groups", "parse,analyze,index,search").split(","));
+        String out = LuceneSearchApp.stringArgument(argList, "out", "benchmark-results.json");
+        BenchmarkHarness harness = new BenchmarkHarness(
+                LuceneSearchApp.intArgument(argList, "warmup", 2),
+                LuceneSearchApp.intArgument(argList, "iterations", 5));
+
+        DocumentCollectionParser parser = new DocumentCollectionParser();
+        parser.parse(corpus);
+        List<DocumentInCollection> docs = parser.getDocuments();
+
+        for (String scale : LuceneSearchApp.stringArgument(argList, "scales", "1,10").split(",")) {
+            int n = Integer.parseInt(scale);
+            File xml = CorpusScaling.replicateXml(new File(corpus), n);
+            List<DocumentInCollection> scaled = CorpusScaling.replicate(docs, n);
+            if (groups.contains("parse")) parse(harness, xml, scale);
+            if (groups.contains("analyze")) analyze(harness, scaled, scale);
+            if (groups.contains("index")) index(harness, scaled, scale);
+            if (groups.contains("search")) search(harness, xml, scale);
+        }
+        harness.writeJson(out);
+        System.out.println("results written to " + out);
+    }
+
+    private static void parse(BenchmarkHarness harness, final File xml, String scale) throws Exception {
+        harness.run("parse", new BenchmarkHarness.Benchmark() {
+            @Override
+            public long run() {
+                final long[] count = new long[1];
+                new DocumentCollectionParser(new DocumentHandler() {
+                    public void handle(DocumentInCollection doc) {
+                        count[0]++;
+                    }
+                }).parse(xml.getPath());
+                return count[0];
+            }
+        }, "scale", scale, "bytes", String.valueOf(xml.length()));
+    }
+
+    private static void analyze(BenchmarkHarness harness, final List<DocumentInCollection> docs, String scale) throws Exception {
+        Map<String, Analyzer> analyzers = new LinkedHashMap<>();
+        analyzers.put("StandardAnalyzer", new StandardAnalyzer(Version.LUCENE_42));
+        analyzers.put("SimpleAnalyzer", new SimpleAnalyzer(Version.LUCENE_42));
+        analyzers.put("EnglishAnalyzer", new EnglishAnalyzer(Version.LUCENE_42));
+        analyzers.put("PorterAnalyzer", new PorterAnalyzer());
+        for (Map.Entry<String, Analyzer> entry : analyzers.entrySet()) {
+            final Analyzer analyzer = entry.getValue();
+            harness.run("analyze", new BenchmarkHarness.Benchmark() {
+                @Override
+                public long run() throws Exception {
+                    long tokens = 0;
+                    for (DocumentInCollection doc : docs) {
+                        TokenStream ts = analyzer.tokenStream("abstract", new StringReader(doc.getAbstractText()));
+                        ts.reset();
+                        while (ts.incrementToken()) {
+                            tokens++;
+                        }
+                        ts.end();
+                        ts.close();
+                    }
+                    return tokens;
+                }
+            }, "scale", scale, "analyzer", entry.getKey());
+        }
+    }
+
+    private static void index(BenchmarkHarness harness, final List<DocumentInCollection> docs, String scale) throws Exception {
+        final File root = Files.createTempDir();
+        final LuceneSearchApp engine = new LuceneSearchApp();
+        engine.configure(Arrays.asList(LuceneSearchApp.INDEX_ROOT + "=" + root.getPath()));
+        harness.run("index", new BenchmarkHarness.Benchmark() {
+            @Override
+            public long run() {
+                engine.index(docs, new DefaultSimilarity());
+                return docs.size();
+            }
+        }, "scale", scale, "analyzer", "StandardAnalyzer");
+        final PreAnalyzedCorpus tokens = PreAnalyzedCorpus.analyze(docs, new StandardAnalyzer(Version.LUCENE_42));
+        harness.run("index", new BenchmarkHarness.Benchmark() {
+            @Override
+            public long run() {
+                engine.indexPreAnalyzed(docs, tokens, new DefaultSimilarity());
+                return docs.size();
+            }
+        }, "scale", scale, "analyzer", "StandardAnalyzer (pre-analyzed)");
+    }
+
+    private static void search(BenchmarkHarness harness, File xml, String scale) throws Exception {
+        File root = Files.createTempDir();
+        for (String similarity : SIMILARITIES) {
+            for (String cacheEntries : new String[]{"0", "16"}) {
+                List<String> argList = new ArrayList<>(Arrays.asList(xml.getPath(), LuceneSearchApp.INDEX_ROOT + "=" + root.getPath()));
+                argList.add(similarity);
+                argList.add(LuceneSearchApp.QUERY_CACHE + "=" + cacheEntries);
+                final LuceneSearchApp engine = new LuceneSearchApp();
+                engine.configure(argList);
+                engine.ensureIndex(xml.getPath(), argList);
+                engine.openSearcher(0);
+                harness.run("search", new BenchmarkHarness.Benchmark() {
+                    @Override
+                    public long run() {
+                        for (String[] queryTerms : LuceneSearchApp.BENCHMARK_QUERIES) {
+                            engine.search(null, Arrays.asList(queryTerms), engine.getSimilarity());
+                        }
+                        return LuceneSearchApp.BENCHMARK_QUERIES.length;
+                    }
+                }, "scale", scale, "similarity", similarity, "queryCache", cacheEntries);
+                engine.closeSearcher();
+            }
+        }
+    }
+}
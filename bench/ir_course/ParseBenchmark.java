@@ -0,0 +1,95 @@
+/*
+ * Parse throughput benchmark for DocumentCollectionParser
+ */
+package ir_course;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Parses the corpus repeatedly and prints throughput in MB/s and the bytes allocated
+ * by the parsing thread per document, then does the same for loading the collection
+ * from a CorpusSnapshot, which must hold exactly the parsed documents.
+ *
+ * usage: ParseBenchmark [corpus] [warmup iterations] [measured iterations]
+ */
+public class ParseBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String corpus = args.length > 0 ? args[0] : SearchSuite.corpusPath;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        double megabytes = new File(corpus).length() / (1024.0 * 1024.0);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for (int i = 0; i < warmup; i++) {
+            parse(corpus);
+        }
+
+        long nanos = 0;
+        long allocated = 0;
+        long docs = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            docs += parse(corpus);
+            nanos += System.nanoTime() - start;
+            allocated += threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        }
+
+        double seconds = nanos / 1e9;
+        System.out.println(String.format("corpus: %s (%.2f MB), %d iterations", corpus, megabytes, iterations));
+        System.out.println(String.format("throughput: %.2f MB/s, %.0f docs/s",
+                megabytes * iterations / seconds, docs / seconds));
+        System.out.println(String.format("allocation: %d bytes/doc", allocated / docs));
+
+        String checksum = IndexManifest.corpusChecksum(new File(corpus));
+        DocumentCollectionParser parser = new DocumentCollectionParser();
+        parser.parse(corpus);
+        List<DocumentInCollection> parsed = parser.getDocuments();
+        File snapshot = File.createTempFile("corpus", ".snapshot");
+        snapshot.deleteOnExit();
+        CorpusSnapshot.write(parsed, snapshot, checksum);
+        List<DocumentInCollection> loaded = CorpusSnapshot.load(snapshot, checksum);
+        for (int i = 0; i < parsed.size(); i++) {
+            if (!parsed.get(i).toString().equals(loaded.get(i).toString())) {
+                throw new IllegalStateException("Snapshot document " + i + " differs: " + loaded.get(i));
+            }
+        }
+        if (loaded.size() != parsed.size()) {
+            throw new IllegalStateException("Snapshot holds " + loaded.size() + " documents, not " + parsed.size());
+        }
+
+        for (int i = 0; i < warmup; i++) {
+            CorpusSnapshot.load(snapshot, checksum);
+        }
+        nanos = 0;
+        allocated = 0;
+        docs = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            docs += CorpusSnapshot.load(snapshot, checksum).size();
+            nanos += System.nanoTime() - start;
+            allocated += threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        }
+        seconds = nanos / 1e9;
+        System.out.println(String.format("snapshot: %.2f MB, %.0f docs/s, %.2f ms per load, %d bytes/doc",
+                snapshot.length() / (1024.0 * 1024.0), docs / seconds, nanos / 1e6 / iterations, allocated / docs));
+    }
+
+    private static int parse(String corpus) {
+        final int[] count = new int[1];
+        new DocumentCollectionParser(new DocumentHandler() {
+            public void handle(DocumentInCollection doc) {
+                count[0]++;
+            }
+        }).parse(corpus);
+        return count[0];
+    }
+}
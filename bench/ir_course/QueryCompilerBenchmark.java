@@ -0,0 +1,224 @@
+/*
+ * Latency from building a query to its first scored document, QueryParser against QueryCompiler
+ */
+package ir_course;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.SimpleAnalyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.util.Version;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that QueryCompiler builds queries equal to those of QueryParser (one parser
+ * per field and query, one parse per term, as LuceneSearchApp built them before) for the
+ * benchmark queries and the queries of every topic, with every analyzer and field mode.
+ * Then times the benchmark queries from the start of building the query until the
+ * collector has the first scored document, with the parser, with the compiler and with
+ * plans cached by the compiler.
+ *
+ * usage: QueryCompilerBenchmark [corpus] [warmup] [rounds] [arguments...]
+ */
+public class QueryCompilerBenchmark {
+
+    private interface Builder {
+        Query build(List<String> terms) throws ParseException;
+    }
+
+    public static void main(String[] args) throws IOException, ParseException {
+        String corpus = args.length > 0 ? args[0] : SearchSuite.corpusPath;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        List<String> argList = new ArrayList<>(Arrays.asList(corpus, LuceneSearchApp.STORAGE + "=ram"));
+        argList.addAll(Arrays.asList(args).subList(Math.min(args.length, 3), args.length));
+        LuceneSearchApp engine = new LuceneSearchApp();
+        engine.configure(argList);
+        engine.ensureIndex(corpus, argList);
+
+        try (DirectoryReader reader = DirectoryReader.open(engine.directory())) {
+            List<List<String>> queries = new ArrayList<>();
+            for (String[] terms : LuceneSearchApp.BENCHMARK_QUERIES) {
+                queries.add(Arrays.asList(terms));
+            }
+            Judgments judgments = Judgments.collect(reader);
+            for (int topic : judgments.topics()) {
+                for (String query : judgments.queries(topic)) {
+                    queries.add(LuceneSearchApp.queryTerms(query));
+                }
+            }
+            for (Analyzer analyzer : new Analyzer[]{new StandardAnalyzer(Version.LUCENE_42), new SimpleAnalyzer(Version.LUCENE_42),
+                    new EnglishAnalyzer(Version.LUCENE_42), new PorterAnalyzer()}) {
+                check(analyzer, queries);
+            }
+            System.out.println("QueryCompiler: queries equal to QueryParser's for " + queries.size() + " queries, 4 analyzers");
+
+            IndexSearcher searcher = new IndexSearcher(reader);
+            searcher.setSimilarity(engine.getSimilarity());
+            final Analyzer analyzer = engine.getAnalyzer();
+            final QueryCompiler compiler = new QueryCompiler(analyzer);
+            final QueryCompiler cached = new QueryCompiler(analyzer, 1024);
+            Builder[] builders = {
+                    new Builder() {
+                        public Query build(List<String> terms) throws ParseException {
+                            return parse(analyzer, null, terms, false);
+                        }
+                    },
+                    new Builder() {
+                        public Query build(List<String> terms) {
+                            return compiler.compile(null, terms, false);
+                        }
+                    },
+                    new Builder() {
+                        public Query build(List<String> terms) {
+                            return cached.compile(null, terms, false);
+                        }
+                    }
+            };
+            String[] names = {"QueryParser", "QueryCompiler", "cached plans"};
+            for (int pass = 0; pass < 2; pass++) {
+                for (int b = 0; b < builders.length; b++) {
+                    time(searcher, builders[b], warmup, null);
+                    int n = LuceneSearchApp.BENCHMARK_QUERIES.length;
+                    long[] latencies = new long[rounds * n];
+                    long start = System.nanoTime();
+                    time(searcher, builders[b], rounds, latencies);
+                    long wall = System.nanoTime() - start;
+                    System.out.println(String.format("%-14s to first doc %s", names[b], new LatencyStats(latencies, wall)));
+                }
+            }
+            System.out.println(cached);
+        }
+        engine.directory().close();
+    }
+
+    private static void check(Analyzer analyzer, List<List<String>> queries) throws ParseException {
+        QueryCompiler compiler = new QueryCompiler(analyzer);
+        for (List<String> terms : queries) {
+            for (boolean exhaustive : new boolean[]{false, true}) {
+                same(parse(analyzer, null, terms, exhaustive), compiler.compile(null, terms, exhaustive), analyzer);
+                same(parse(analyzer, terms, terms, exhaustive), compiler.compile(terms, terms, exhaustive), analyzer);
+                same(parseMultiField(analyzer, terms, 2f, 0.5f, 0.1f, exhaustive),
+                        compiler.compileMultiField(terms, 2f, 0.5f, 0.1f, exhaustive), analyzer);
+            }
+        }
+    }
+
+    private static void same(Query expected, Query actual, Analyzer analyzer) {
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException(analyzer.getClass().getSimpleName() + " compiled " + actual
+                    + " instead of " + expected);
+        }
+    }
+
+    // construction to first collected document of every benchmark query, rounds times
+    private static void time(IndexSearcher searcher, Builder builder, int rounds, long[] latencies) throws IOException, ParseException {
+        int n = LuceneSearchApp.BENCHMARK_QUERIES.length;
+        FirstDocCollector collector = new FirstDocCollector();
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < n; i++) {
+                collector.reset();
+                long start = System.nanoTime();
+                Query query = builder.build(Arrays.asList(LuceneSearchApp.BENCHMARK_QUERIES[i]));
+                searcher.search(query, collector);
+                if (latencies != null) {
+                    latencies[round * n + i] = collector.first - start;
+                }
+            }
+        }
+    }
+
+    // LuceneSearchApp.buildQuery as it was: a parser per field and query, a parse per term
+    private static BooleanQuery parse(Analyzer analyzer, List<String> inTitle, List<String> inAbstract, boolean exhaustive)
+            throws ParseException {
+        BooleanQuery query = new BooleanQuery();
+        addParsed(analyzer, query, LuceneSearchApp.TITLE, inTitle);
+        addParsed(analyzer, query, LuceneSearchApp.ABSTRACT, inAbstract);
+        if (exhaustive) {
+            query.add(new MatchAllDocsQuery(), BooleanClause.Occur.SHOULD);
+        }
+        return query;
+    }
+
+    private static void addParsed(Analyzer analyzer, BooleanQuery query, String field, List<String> terms) throws ParseException {
+        if (terms == null) return;
+        QueryParser parser = new QueryParser(Version.LUCENE_42, field, analyzer);
+        for (String term : terms) {
+            query.add(parser.parse(term), BooleanClause.Occur.SHOULD);
+        }
+    }
+
+    // LuceneSearchApp.buildMultiFieldQuery as it was
+    private static BooleanQuery parseMultiField(Analyzer analyzer, List<String> terms, float titleBoost, float abstractBoost,
+                                                float tieBreaker, boolean exhaustive) throws ParseException {
+        BooleanQuery query = new BooleanQuery();
+        QueryParser titleParser = new QueryParser(Version.LUCENE_42, LuceneSearchApp.TITLE, analyzer);
+        QueryParser abstractParser = new QueryParser(Version.LUCENE_42, LuceneSearchApp.ABSTRACT, analyzer);
+        for (String term : terms) {
+            DisjunctionMaxQuery either = new DisjunctionMaxQuery(tieBreaker);
+            Query title = titleParser.parse(term);
+            title.setBoost(title.getBoost() * titleBoost);
+            Query inAbstract = abstractParser.parse(term);
+            inAbstract.setBoost(inAbstract.getBoost() * abstractBoost);
+            either.add(title);
+            either.add(inAbstract);
+            query.add(either, BooleanClause.Occur.SHOULD);
+        }
+        if (exhaustive) {
+            query.add(new MatchAllDocsQuery(), BooleanClause.Occur.SHOULD);
+        }
+        return query;
+    }
+
+    // collects the top documents like LuceneSearchApp and notes when the first one was scored
+    private static class FirstDocCollector extends Collector {
+
+        private TopScoreDocCollector top;
+        long first;
+
+        void reset() {
+            top = TopScoreDocCollector.create(LuceneSearchApp.TOP_N, false);
+            first = 0;
+        }
+
+        @Override
+        public void setScorer(Scorer scorer) throws IOException {
+            top.setScorer(scorer);
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            top.collect(doc);
+            if (first == 0) {
+                first = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void setNextReader(AtomicReaderContext context) throws IOException {
+            top.setNextReader(context);
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return top.acceptsDocsOutOfOrder();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Throughput and latency of concurrent query execution
+ */
+package ir_course;
+
+import com.google.common.io.Files;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the benchmark queries through QueryService for every combination of query threads
+ * and intra-query (per segment) search threads, and prints QPS and p50/p95/p99 latency.
+ * The index is split into several segments so that per-segment parallelism has something
+ * to work on.
+ *
+ * usage: QueryServiceBenchmark [corpus] [batch size] [segments]
+ */
+public class QueryServiceBenchmark {
+
+    private static final int[] QUERY_THREADS = {1, 2, 4, 8, 16};
+    private static final int[] SEARCH_THREADS = {0, 4};
+
+    public static void main(String[] args) throws IOException {
+        String corpus = args.length > 0 ? args[0] : SearchSuite.corpusPath;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 4000;
+        int segments = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_42);
+        DocumentCollectionParser parser = new DocumentCollectionParser();
+        parser.parse(corpus);
+        List<DocumentInCollection> docs = parser.getDocuments();
+        File indexDir = Files.createTempDir();
+        Directory dir = FSDirectory.open(indexDir);
+        buildIndex(dir, docs, analyzer, segments);
+
+        List<Query> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            String[] terms = LuceneSearchApp.BENCHMARK_QUERIES[i % LuceneSearchApp.BENCHMARK_QUERIES.length];
+            batch.add(LuceneSearchApp.buildQuery(analyzer, null, Arrays.asList(terms), false));
+        }
+
+        System.out.println(String.format("%d documents, %d segments, batches of %d queries, top %d",
+                docs.size(), segments, batchSize, LuceneSearchApp.TOP_N));
+        for (int searchThreads : SEARCH_THREADS) {
+            for (int queryThreads : QUERY_THREADS) {
+                ExecutorService searchExecutor = searchThreads > 0 ? Executors.newFixedThreadPool(searchThreads) : null;
+                SearcherLifecycle searchers = new SearcherLifecycle(dir,
+                        new DefaultSimilarity(), null, searchExecutor);
+                QueryService service = new QueryService(searchers, queryThreads);
+                service.run(batch, LuceneSearchApp.TOP_N); // warmup
+                QueryService.BatchResult result = service.run(batch, LuceneSearchApp.TOP_N);
+                System.out.println(String.format("query threads %2d, search threads %d: %s",
+                        queryThreads, searchThreads, result.latency));
+                service.close();
+                searchers.close();
+                if (searchExecutor != null) {
+                    searchExecutor.shutdown();
+                }
+            }
+        }
+        dir.close();
+    }
+
+    private static void buildIndex(Directory dir, List<DocumentInCollection> docs, Analyzer analyzer, int segments) throws IOException {
+        IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_42, analyzer);
+        iwc.setMaxBufferedDocs(Math.max(2, docs.size() / segments + 1));
+        iwc.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+        IndexWriter w = new IndexWriter(dir, iwc);
+        for (DocumentInCollection doc : docs) {
+            w.addDocument(LuceneSearchApp.createDocument(doc));
+        }
+        w.close();
+    }
+}
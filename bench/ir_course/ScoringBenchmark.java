@@ -0,0 +1,148 @@
+/*
+ * Query latency of the standard similarities against their fast scoring versions
+ */
+package ir_course;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.Version;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a RAM index for bm25 and one for more-like-vsm, then runs the benchmark
+ * queries, plain and exhaustive (every document is scored), with the standard similarity
+ * and with its fast version on the same reader. Fails if any doc id or score of the top
+ * TOP_N differs in a single bit.
+ *
+ * usage: ScoringBenchmark [corpus] [warmup] [rounds]
+ */
+public class ScoringBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String corpus = args.length > 0 ? args[0] : SearchSuite.corpusPath;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        // the analyzer of the default configuration
+        Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_42);
+        List<Query> queries = new ArrayList<>();
+        for (boolean exhaustive : new boolean[]{false, true}) {
+            for (String[] terms : LuceneSearchApp.BENCHMARK_QUERIES) {
+                queries.add(LuceneSearchApp.buildQuery(analyzer, null, Arrays.asList(terms), exhaustive));
+            }
+        }
+
+        for (String scorer : new String[]{SearchSuite.BM25, SearchSuite.MORELIKEVSM}) {
+            List<String> argList = Arrays.asList(corpus, scorer, LuceneSearchApp.STORAGE + "=ram");
+            LuceneSearchApp engine = new LuceneSearchApp();
+            engine.configure(argList);
+            engine.ensureIndex(corpus, argList);
+            List<String> fastArgs = new ArrayList<>(argList);
+            fastArgs.add(LuceneSearchApp.FAST_SCORING);
+            LuceneSearchApp fastEngine = new LuceneSearchApp();
+            fastEngine.configure(fastArgs);
+            Similarity standard = engine.getSimilarity();
+            Similarity fast = fastEngine.getSimilarity();
+
+            try (DirectoryReader reader = DirectoryReader.open(engine.directory())) {
+                IndexSearcher searcher = new IndexSearcher(reader);
+                check(searcher, queries, standard, fast);
+                for (Similarity similarity : new Similarity[]{standard, fast, standard, fast}) {
+                    searcher.setSimilarity(similarity);
+                    time(searcher, queries, warmup);
+                    long[] latencies = new long[rounds * queries.size()];
+                    long start = System.nanoTime();
+                    for (int round = 0; round < rounds; round++) {
+                        time(searcher, queries, latencies, round * queries.size());
+                    }
+                    long wall = System.nanoTime() - start;
+                    System.out.println(String.format("%-36s %s", similarity, new LatencyStats(latencies, wall)));
+                }
+                firstQueries(searcher, queries, scorer, rounds / 10);
+            }
+            engine.directory().close();
+        }
+    }
+
+    /* The first queries on a searcher with a new fast similarity, whose tables are built by
+     * the first query that needs them, or beforehand by precompute() as the warmer does.
+     */
+    private static void firstQueries(IndexSearcher searcher, List<Query> queries, String scorer, int trials) throws IOException {
+        long[] lazy = new long[trials];
+        long[] precomputed = new long[trials];
+        long[] precompute = new long[trials];
+        for (int trial = 0; trial < trials; trial++) {
+            for (boolean warm : new boolean[]{false, true}) {
+                TableDrivenSimilarity similarity = scorer.equals(SearchSuite.BM25)
+                        ? new FastBM25Similarity() : new FastVSMSimilarity();
+                searcher.setSimilarity(similarity);
+                long start = System.nanoTime();
+                if (warm) {
+                    similarity.precompute(searcher);
+                    precompute[trial] = System.nanoTime() - start;
+                    start = System.nanoTime();
+                }
+                time(searcher, queries, 1);
+                (warm ? precomputed : lazy)[trial] = System.nanoTime() - start;
+            }
+        }
+        System.out.println(String.format("%-36s first queries, tables built by them: %s", scorer, new LatencyStats(lazy, sum(lazy))));
+        System.out.println(String.format("%-36s first queries, tables precomputed: %s", scorer, new LatencyStats(precomputed, sum(precomputed))));
+        System.out.println(String.format("%-36s precompute: %s", scorer, new LatencyStats(precompute, sum(precompute))));
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static void check(IndexSearcher searcher, List<Query> queries, Similarity standard, Similarity fast) throws IOException {
+        for (Query query : queries) {
+            searcher.setSimilarity(standard);
+            TopDocs expected = searcher.search(query, LuceneSearchApp.TOP_N);
+            searcher.setSimilarity(fast);
+            TopDocs actual = searcher.search(query, LuceneSearchApp.TOP_N);
+            if (expected.scoreDocs.length != actual.scoreDocs.length) {
+                throw new IllegalStateException(fast + " found " + actual.scoreDocs.length + " documents instead of "
+                        + expected.scoreDocs.length + " for " + query);
+            }
+            for (int i = 0; i < expected.scoreDocs.length; i++) {
+                ScoreDoc e = expected.scoreDocs[i];
+                ScoreDoc a = actual.scoreDocs[i];
+                if (e.doc != a.doc || Float.floatToIntBits(e.score) != Float.floatToIntBits(a.score)) {
+                    throw new IllegalStateException(fast + " ranks doc " + a.doc + " (" + a.score + ") at " + i
+                            + " instead of doc " + e.doc + " (" + e.score + ") for " + query);
+                }
+            }
+        }
+        System.out.println(fast + ": identical doc ids and scores for " + queries.size() + " queries");
+    }
+
+    private static void time(IndexSearcher searcher, List<Query> queries, int rounds) throws IOException {
+        for (int round = 0; round < rounds; round++) {
+            for (Query query : queries) {
+                searcher.search(query, LuceneSearchApp.TOP_N);
+            }
+        }
+    }
+
+    private static void time(IndexSearcher searcher, List<Query> queries, long[] latencies, int offset) throws IOException {
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            searcher.search(queries.get(i), LuceneSearchApp.TOP_N);
+            latencies[offset + i] = System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Query latency of a sharded index by number of shards
+ */
+package ir_course;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Version;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Builds an unsharded RAM index and sharded ones, then runs the benchmark queries on
+ * every index, fanning out to one thread per shard. Fails if a sharded index finds other
+ * documents than the unsharded one, ranks them in another order or scores any document
+ * differently in a single bit; documents are compared by id, as their doc ids differ
+ * between the indexes.
+ *
+ * usage: ShardingBenchmark [corpus] [warmup] [rounds] [shard counts, e.g. 2,4,8] [arguments...]
+ */
+public class ShardingBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String corpus = args.length > 0 ? args[0] : SearchSuite.corpusPath;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        String counts = args.length > 3 ? args[3] : "2,4,8";
+        List<String> argList = new ArrayList<>(Arrays.asList(corpus, LuceneSearchApp.STORAGE + "=ram"));
+        argList.addAll(Arrays.asList(args).subList(Math.min(args.length, 4), args.length));
+        // the analyzer of the default configuration
+        Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_42);
+        List<Query> queries = new ArrayList<>();
+        for (String[] terms : LuceneSearchApp.BENCHMARK_QUERIES) {
+            queries.add(LuceneSearchApp.buildQuery(analyzer, null, Arrays.asList(terms), false));
+        }
+
+        LuceneSearchApp engine = new LuceneSearchApp();
+        engine.configure(argList);
+        engine.ensureIndex(corpus, argList);
+        List<Map<String, Float>> expected = new ArrayList<>();
+        try (DirectoryReader reader = DirectoryReader.open(engine.directory())) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            searcher.setSimilarity(engine.getSimilarity());
+            for (Query query : queries) {
+                expected.add(scores(searcher, query));
+            }
+            report("1 shard", searcher, queries, warmup, rounds);
+        }
+        engine.directory().close();
+
+        for (String count : counts.split(",")) {
+            List<String> shardArgs = new ArrayList<>(argList);
+            shardArgs.add(LuceneSearchApp.SHARDS + "=" + count);
+            LuceneSearchApp shardedEngine = new LuceneSearchApp();
+            shardedEngine.configure(shardArgs);
+            shardedEngine.ensureIndex(corpus, shardArgs);
+            Directory[] dirs = shardedEngine.shardDirectories();
+            IndexReader[] shards = new IndexReader[dirs.length];
+            for (int i = 0; i < dirs.length; i++) {
+                shards[i] = DirectoryReader.open(dirs[i]);
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(dirs.length);
+            try {
+                ShardedSearcher searcher = ShardedSearcher.open(shards, executor);
+                searcher.setSimilarity(shardedEngine.getSimilarity());
+                for (int i = 0; i < queries.size(); i++) {
+                    check(count + " shards", expected.get(i), scores(searcher, queries.get(i)), queries.get(i));
+                }
+                System.out.println(count + " shards: identical documents, ranks and scores for " + queries.size() + " queries");
+                report(count + " shards", searcher, queries, warmup, rounds);
+            } finally {
+                executor.shutdown();
+                for (int i = 0; i < dirs.length; i++) {
+                    shards[i].close();
+                    dirs[i].close();
+                }
+            }
+        }
+    }
+
+    // score of every document found, by id in rank order
+    private static Map<String, Float> scores(IndexSearcher searcher, Query query) throws IOException {
+        Map<String, Float> scores = new LinkedHashMap<>();
+        for (ScoreDoc hit : searcher.search(query, LuceneSearchApp.TOP_N).scoreDocs) {
+            scores.put(searcher.doc(hit.doc).get(LuceneSearchApp.ID), hit.score);
+        }
+        return scores;
+    }
+
+    private static void check(String name, Map<String, Float> expected, Map<String, Float> actual, Query query) {
+        if (!expected.keySet().equals(actual.keySet())) {
+            throw new IllegalStateException(name + " found " + actual.size() + " other documents than the "
+                    + expected.size() + " of the unsharded index for " + query);
+        }
+        if (!new ArrayList<>(expected.keySet()).equals(new ArrayList<>(actual.keySet()))) {
+            throw new IllegalStateException(name + " ranks the documents in another order than the unsharded index for " + query);
+        }
+        for (Map.Entry<String, Float> e : expected.entrySet()) {
+            float score = actual.get(e.getKey());
+            if (Float.floatToIntBits(score) != Float.floatToIntBits(e.getValue())) {
+                throw new IllegalStateException(name + " scores " + e.getKey() + " " + score + " instead of "
+                        + e.getValue() + " for " + query);
+            }
+        }
+    }
+
+    private static void report(String name, IndexSearcher searcher, List<Query> queries, int warmup, int rounds) throws IOException {
+        for (int round = 0; round < warmup; round++) {
+            for (Query query : queries) {
+                searcher.search(query, LuceneSearchApp.TOP_N);
+            }
+        }
+        long[] latencies = new long[rounds * queries.size()];
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < queries.size(); i++) {
+                long begin = System.nanoTime();
+                searcher.search(queries.get(i), LuceneSearchApp.TOP_N);
+                latencies[round * queries.size() + i] = System.nanoTime() - begin;
+            }
+        }
+        long wall = System.nanoTime() - start;
+        System.out.println(String.format("%-12s %s", name, new LatencyStats(latencies, wall)));
+    }
+}
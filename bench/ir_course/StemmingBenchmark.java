@@ -0,0 +1,95 @@
+/*
+ * Porter analysis throughput with and without the stem cache under concurrency
+ */
+package ir_course;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Every thread runs one shared PorterAnalyzer over all abstracts and checksums the terms
+ * it gets. The checksums must equal the one of a single-threaded uncached run, any
+ * difference means stemming output was corrupted. Prints tokens/s over all threads and
+ * the hit rate of the cache.
+ *
+ * usage: StemmingBenchmark [corpus] [rounds]
+ */
+public class StemmingBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    public static void main(String[] args) throws Exception {
+        String corpus = args.length > 0 ? args[0] : SearchSuite.corpusPath;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        DocumentCollectionParser parser = new DocumentCollectionParser();
+        parser.parse(corpus);
+        List<DocumentInCollection> docs = parser.getDocuments();
+
+        long expected = analyze(new PorterAnalyzer(null), docs)[1];
+        for (int threads : THREADS) {
+            run("uncached", new PorterAnalyzer(null), null, docs, threads, rounds, expected);
+            StemmingService service = new StemmingService(StemmingService.DEFAULT_CACHE_SIZE);
+            run("cached", new PorterAnalyzer(service), service, docs, threads, rounds, expected);
+        }
+    }
+
+    private static void run(String name, final Analyzer analyzer, StemmingService service,
+                            final List<DocumentInCollection> docs, int threads, int rounds, long expected) throws Exception {
+        double best = 0;
+        boolean corrupted = false;
+        for (int round = 0; round < rounds; round++) {
+            final long[][] results = new long[threads][];
+            Thread[] workers = new Thread[threads];
+            long start = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                final int worker = i;
+                workers[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            results[worker] = analyze(analyzer, docs);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+                workers[i].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long nanos = System.nanoTime() - start;
+            long tokens = 0;
+            for (long[] result : results) {
+                tokens += result[0];
+                corrupted |= result[1] != expected;
+            }
+            best = Math.max(best, tokens / (nanos / 1e9));
+        }
+        System.out.println(String.format("%-8s threads %2d: %12.0f tokens/s%s%s", name, threads, best,
+                corrupted ? ", OUTPUT CORRUPTED" : "", service == null ? "" : ", " + service));
+    }
+
+    // number of tokens and a checksum of all terms in order
+    private static long[] analyze(Analyzer analyzer, List<DocumentInCollection> docs) throws IOException {
+        long tokens = 0;
+        long checksum = 0;
+        for (DocumentInCollection doc : docs) {
+            TokenStream ts = analyzer.tokenStream("abstract", new StringReader(doc.getAbstractText()));
+            CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                tokens++;
+                checksum = checksum * 31 + termAtt.toString().hashCode();
+            }
+            ts.end();
+            ts.close();
+        }
+        return new long[]{tokens, checksum};
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Cold and warm query latency of the index storage modes
+ */
+package ir_course;
+
+import com.google.common.io.Files;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Version;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds the index once per storage mode, then measures
+ *   open  opening a new reader on the directory
+ *   cold  the first run of each benchmark query on that fresh, unwarmed reader
+ *   warm  the same queries after the reader has answered them many times
+ * Cold runs are repeated with a new reader every round. The OS page cache is not
+ * dropped, so FS and MMAP cold numbers are for a reader that is new to the JVM but
+ * whose files are cached by the OS. FS runs first and also pays for JIT warmup, FS and
+ * MMAP search the same files.
+ *
+ * usage: StorageModeBenchmark [corpus] [cold rounds] [warm rounds]
+ */
+public class StorageModeBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String corpus = args.length > 0 ? args[0] : SearchSuite.corpusPath;
+        int coldRounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int warmRounds = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        File root = Files.createTempDir();
+        // the analyzer of the default configuration
+        Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_42);
+
+        for (StorageMode mode : StorageMode.values()) {
+            List<String> argList = Arrays.asList(corpus, LuceneSearchApp.INDEX_ROOT + "=" + root.getPath(),
+                    LuceneSearchApp.STORAGE + "=" + mode);
+            LuceneSearchApp engine = new LuceneSearchApp();
+            engine.configure(argList);
+            engine.ensureIndex(corpus, argList);
+            Directory dir = engine.directory();
+
+            List<Query> queries = new ArrayList<>();
+            for (String[] terms : LuceneSearchApp.BENCHMARK_QUERIES) {
+                queries.add(LuceneSearchApp.buildQuery(analyzer, null, Arrays.asList(terms), false));
+            }
+
+            long[] open = new long[coldRounds];
+            long[] cold = new long[coldRounds * queries.size()];
+            for (int round = 0; round < coldRounds; round++) {
+                long start = System.nanoTime();
+                SearcherLifecycle searchers = new SearcherLifecycle(dir, new DefaultSimilarity(), null);
+                open[round] = System.nanoTime() - start;
+                time(searchers, queries, cold, round * queries.size());
+                searchers.close();
+            }
+
+            SearcherLifecycle searchers = new SearcherLifecycle(dir, new DefaultSimilarity(), null);
+            long[] warm = new long[warmRounds * queries.size()];
+            time(searchers, queries, new long[warm.length], 0);
+            long start = System.nanoTime();
+            for (int round = 0; round < warmRounds; round++) {
+                time(searchers, queries, warm, round * queries.size());
+            }
+            long wall = System.nanoTime() - start;
+            searchers.close();
+
+            System.out.println(String.format("%-5s open: %s", mode, new LatencyStats(open, sum(open))));
+            System.out.println(String.format("%-5s cold: %s", mode, new LatencyStats(cold, sum(cold))));
+            System.out.println(String.format("%-5s warm: %s", mode, new LatencyStats(warm, wall)));
+            dir.close();
+        }
+    }
+
+    private static void time(SearcherLifecycle searchers, List<Query> queries, long[] latencies, int offset) throws IOException {
+        for (int i = 0; i < queries.size(); i++) {
+            IndexSearcher searcher = searchers.acquire();
+            try {
+                long start = System.nanoTime();
+                searcher.search(queries.get(i), LuceneSearchApp.TOP_N);
+                latencies[offset + i] = System.nanoTime() - start;
+            } finally {
+                searchers.release(searcher);
+            }
+        }
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) sum += value;
+        return sum;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Porter stemming through a StemmingService
+ */
+package ir_course;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
+
+import java.io.IOException;
+
+/**
+ * Drop-in replacement for PorterStemFilter that looks the stem of every token up in the
+ * service's cache, straight from the term buffer, and only runs the stemmer for words it
+ * has not seen. Like PorterStemFilter it expects lower case input and leaves keyword
+ * tokens alone.
+ */
+public final class CachingPorterStemFilter extends TokenFilter {
+
+    private final StemmingService stemmer;
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final KeywordAttribute keywordAtt = addAttribute(KeywordAttribute.class);
+
+    public CachingPorterStemFilter(TokenStream input, StemmingService stemmer) {
+        super(input);
+        this.stemmer = stemmer;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (!input.incrementToken()) {
+            return false;
+        }
+        if (!keywordAtt.isKeyword()) {
+            String stem = stemmer.stem(termAtt.buffer(), termAtt.length());
+            termAtt.setEmpty().append(stem);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Column-wise in-memory store of the parsed document collection
+ */
+package ir_course;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Holds the collection in a few arrays instead of one DocumentInCollection with four
+ * Strings per item: the id, title and abstract of every document are consecutive UTF-8
+ * ranges of one byte arena addressed by an offset array, search task numbers are an int column,
+ * relevance and null texts are bitsets, and every distinct query is kept once and
+ * referenced by number.
+ *
+ * As a List it is read-only and gives a View per document: a DocumentInCollection that
+ * only holds the document's index and whose getters read the columns, decoding texts from
+ * the arena on every call. A View always shows the same document and its setters are not
+ * supported, so neither the View nor the store can be changed through it. The store is
+ * immutable once built and can be shared between threads.
+ */
+public class ColumnarCorpus extends AbstractList<DocumentInCollection> implements RandomAccess {
+
+    // texts of a document in the arena, in this order
+    private static final int ID = 0;
+    private static final int TITLE = 1;
+    private static final int ABSTRACT = 2;
+    private static final int TEXTS = 3;
+
+    // UTF-8 rather than chars: the texts are almost all ASCII, one byte per char instead of
+    // the two of the char[] behind every String on Java 7
+    private final byte[] arena;
+    // start of every text of every document in arena, and the end of the last one
+    private final int[] offsets;
+    // set for every text that is null rather than empty
+    private final BitSet nulls;
+    private final int[] tasks;
+    private final BitSet relevant;
+    // number of the query in queries, -1 for none
+    private final int[] queryIds;
+    private final String[] queries;
+
+    private ColumnarCorpus(Builder builder) {
+        int size = builder.size;
+        this.arena = Arrays.copyOf(builder.arena, builder.length);
+        this.offsets = Arrays.copyOf(builder.offsets, size * TEXTS + 1);
+        this.offsets[size * TEXTS] = builder.length;
+        this.nulls = (BitSet) builder.nulls.clone();
+        this.tasks = Arrays.copyOf(builder.tasks, size);
+        this.relevant = (BitSet) builder.relevant.clone();
+        this.queryIds = Arrays.copyOf(builder.queryIds, size);
+        this.queries = builder.queries.toArray(new String[builder.queries.size()]);
+    }
+
+    public static ColumnarCorpus copyOf(List<DocumentInCollection> docs) {
+        Builder builder = new Builder();
+        for (DocumentInCollection doc : docs) {
+            builder.handle(doc);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return tasks.length;
+    }
+
+    @Override
+    public DocumentInCollection get(int index) {
+        if (index < 0 || index >= tasks.length) {
+            throw new IndexOutOfBoundsException("Document " + index + " of " + tasks.length);
+        }
+        return new View(index);
+    }
+
+    private String text(int doc, int text) {
+        int i = doc * TEXTS + text;
+        if (nulls.get(i)) {
+            return null;
+        }
+        return new String(arena, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A read-only document of the corpus. The setters of DocumentInCollection are not
+     * supported; the fields of the superclass are never set or read.
+     */
+    public final class View extends DocumentInCollection {
+
+        private final int index;
+
+        private View(int index) {
+            this.index = index;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public String getId() {
+            return text(index, ID);
+        }
+
+        @Override
+        public String getTitle() {
+            return text(index, TITLE);
+        }
+
+        @Override
+        public String getAbstractText() {
+            return text(index, ABSTRACT);
+        }
+
+        @Override
+        public int getSearchTaskNumber() {
+            return tasks[index];
+        }
+
+        @Override
+        public String getQuery() {
+            int query = queryIds[index];
+            return query < 0 ? null : queries[query];
+        }
+
+        @Override
+        public boolean isRelevant() {
+            return relevant.get(index);
+        }
+
+        @Override
+        public void setId(String id) {
+            throw new UnsupportedOperationException("ColumnarCorpus is read-only");
+        }
+
+        @Override
+        public void setTitle(String title) {
+            throw new UnsupportedOperationException("ColumnarCorpus is read-only");
+        }
+
+        @Override
+        public void setAbstractText(String abstractText) {
+            throw new UnsupportedOperationException("ColumnarCorpus is read-only");
+        }
+
+        @Override
+        public void setSearchTaskNumber(int searchTaskNumber) {
+            throw new UnsupportedOperationException("ColumnarCorpus is read-only");
+        }
+
+        @Override
+        public void setQuery(String query) {
+            throw new UnsupportedOperationException("ColumnarCorpus is read-only");
+        }
+
+        @Override
+        public void setRelevant(boolean relevant) {
+            throw new UnsupportedOperationException("ColumnarCorpus is read-only");
+        }
+
+        @Override
+        public String toString() {
+            return "Id: " + getId() + "\n Title: " + getTitle() + "\n abstract: " + getAbstractText()
+                    + "\n search task number: " + getSearchTaskNumber() + "\n query: " + getQuery()
+                    + "\n relevant: " + isRelevant();
+        }
+    }
+
+    /**
+     * Appends the documents it is handed to the columns; as the handler of a
+     * DocumentCollectionParser it builds the store without a list of parsed documents.
+     */
+    public static class Builder implements DocumentHandler {
+
+        private byte[] arena = new byte[1 << 16];
+        private int length;
+        private int[] offsets = new int[1024 * TEXTS + 1];
+        private final BitSet nulls = new BitSet();
+        private int[] tasks = new int[1024];
+        private final BitSet relevant = new BitSet();
+        private int[] queryIds = new int[1024];
+        private final Map<String, Integer> queryNumbers = new HashMap<>();
+        private final List<String> queries = new ArrayList<>();
+        private int size;
+
+        @Override
+        public void handle(DocumentInCollection doc) {
+            if (size == tasks.length) {
+                int capacity = size * 2;
+                offsets = Arrays.copyOf(offsets, capacity * TEXTS + 1);
+                tasks = Arrays.copyOf(tasks, capacity);
+                queryIds = Arrays.copyOf(queryIds, capacity);
+            }
+            append(doc.getId(), size * TEXTS + ID);
+            append(doc.getTitle(), size * TEXTS + TITLE);
+            append(doc.getAbstractText(), size * TEXTS + ABSTRACT);
+            tasks[size] = doc.getSearchTaskNumber();
+            if (doc.isRelevant()) {
+                relevant.set(size);
+            }
+            queryIds[size] = queryNumber(doc.getQuery());
+            size++;
+        }
+
+        public ColumnarCorpus build() {
+            return new ColumnarCorpus(this);
+        }
+
+        private void append(String text, int i) {
+            offsets[i] = length;
+            if (text == null) {
+                nulls.set(i);
+                return;
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            if (length + bytes.length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, length + bytes.length));
+            }
+            System.arraycopy(bytes, 0, arena, length, bytes.length);
+            length += bytes.length;
+        }
+
+        private int queryNumber(String query) {
+            if (query == null) {
+                return -1;
+            }
+            Integer number = queryNumbers.get(query);
+            if (number == null) {
+                number = queries.size();
+                queryNumbers.put(query, number);
+                queries.add(query);
+            }
+            return number;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Binary snapshot of the parsed document collection
+ */
+package ir_course;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The documents of the collection as DocumentCollectionParser produces them, in corpus
+ * order. The file starts with the SHA-1 of the corpus XML and the number of documents;
+ * every document follows as its id, title, abstract and query as UTF-8 strings prefixed
+ * with their byte length (-1 for null), its search task number and its relevance byte.
+ *
+ * load() memory-maps the file and decodes it in one sequential pass, which is several
+ * times faster than parsing the XML again. A snapshot of another corpus is ignored.
+ */
+public class CorpusSnapshot {
+
+    private static final int MAGIC = 0x49525344;
+    private static final int FORMAT = 1;
+
+    private CorpusSnapshot() {
+    }
+
+    /* The documents of the corpus from the snapshot file, or parsed from the XML when the
+     * snapshot is missing or was written for another version of the corpus; the snapshot
+     * is (re)written in that case. A corpus that fails to parse throws before anything is
+     * written, so a partial collection is never saved under the corpus checksum.
+     */
+    public static List<DocumentInCollection> documents(String corpusPath, File file) throws IOException {
+        String checksum = IndexManifest.corpusChecksum(new File(corpusPath));
+        List<DocumentInCollection> docs = load(file, checksum);
+        if (docs == null) {
+            DocumentCollectionParser parser = new DocumentCollectionParser();
+            // throws on a broken corpus, only a complete parse is written
+            parser.parse(corpusPath);
+            docs = parser.getDocuments();
+            write(docs, file, checksum);
+        }
+        return docs;
+    }
+
+    // the documents in file, or null if there is no complete snapshot of this corpus
+    public static List<DocumentInCollection> load(File file, String corpusChecksum) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] scratch = new byte[256];
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT) {
+                return null;
+            }
+            if (!corpusChecksum.equals(readString(in, scratch))) {
+                return null;
+            }
+            int count = in.getInt();
+            List<DocumentInCollection> docs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = readString(in, scratch);
+                String title = readString(in, scratch);
+                String abstractText = readString(in, scratch);
+                String query = readString(in, scratch);
+                int task = in.getInt();
+                DocumentInCollection doc = new DocumentInCollection(title, abstractText, task, query, in.get() != 0);
+                doc.setId(id);
+                docs.add(doc);
+            }
+            return docs;
+        } catch (BufferUnderflowException e) {
+            // a file cut short is written again from the XML
+            return null;
+        }
+    }
+
+    /* Written to a temporary file first and moved into place, so concurrent runs never
+     * map a partial file.
+     */
+    public static void write(List<DocumentInCollection> docs, File file, String corpusChecksum) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            writeString(out, corpusChecksum);
+            out.writeInt(docs.size());
+            for (DocumentInCollection doc : docs) {
+                writeString(out, doc.getId());
+                writeString(out, doc.getTitle());
+                writeString(out, doc.getAbstractText());
+                writeString(out, doc.getQuery());
+                out.writeInt(doc.getSearchTaskNumber());
+                out.writeByte(doc.isRelevant() ? 1 : 0);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // strings that fit are copied out of the mapping through scratch
+    private static String readString(MappedByteBuffer in, byte[] scratch) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        in.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -8,8 +8,10 @@
 package ir_course;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -21,7 +23,28 @@ import org.xml.sax.helpers.DefaultHandler;
 
 public class DocumentCollectionParser extends DefaultHandler {
 	
+	// element ids used for dispatch in startElement/endElement
+	private static final int OTHER = 0;
+	private static final int ITEM = 1;
+	private static final int TITLE = 2;
+	private static final int ABSTRACT = 3;
+	private static final int SEARCH_TASK_NUMBER = 4;
+	private static final int QUERY = 5;
+	private static final int RELEVANCE = 6;
+	
+	private static final Map<String, Integer> ELEMENTS = new HashMap<String, Integer>();
+	static {
+		ELEMENTS.put("item", ITEM);
+		ELEMENTS.put("title", TITLE);
+		ELEMENTS.put("abstract", ABSTRACT);
+		ELEMENTS.put("search_task_number", SEARCH_TASK_NUMBER);
+		ELEMENTS.put("query", QUERY);
+		ELEMENTS.put("relevance", RELEVANCE);
+	}
+	
 	private List<DocumentInCollection> docs;
+	private DocumentHandler handler;
+	private DocumentKeys keys;
 	
 	private boolean item;
 	private boolean title;
@@ -30,11 +53,18 @@ public class DocumentCollectionParser extends DefaultHandler {
 	private boolean query;
 	private boolean relevance;
 	
-	private String currentText;
+	// text of the current element, reused for every element
+	private final StringBuilder currentText = new StringBuilder();
 	private DocumentInCollection currentDoc;
 	
 	public DocumentCollectionParser() {
 		this.docs = new LinkedList<DocumentInCollection>();
+		this.keys = new DocumentKeys();
+		this.handler = new DocumentHandler() {
+			public void handle(DocumentInCollection doc) {
+				docs.add(doc);
+			}
+		};
 		
 		this.item = false;
 		this.title = false;
@@ -44,17 +74,22 @@ public class DocumentCollectionParser extends DefaultHandler {
 		this.relevance = false;
 	}
 	
-	// parses the document collection in the given URI
+	// streams every parsed document to the given handler instead of collecting them,
+	// getDocuments() stays empty in this mode
+	public DocumentCollectionParser(DocumentHandler handler) {
+		this();
+		this.handler = handler;
+	}
+	
+	// parses the document collection in the given URI, a collection that cannot be read
+	// completely fails instead of leaving only the documents before the error
 	public void parse(String uri) {
 		try {
 			SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
 			parser.parse(uri, this);
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
-		} catch (SAXException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+		} catch (ParserConfigurationException | SAXException | IOException e) {
+			System.err.println("Error parsing document collection!");
+			throw new RuntimeException(e);
 		}
 	}
 	
@@ -67,60 +102,86 @@ public class DocumentCollectionParser extends DefaultHandler {
 	// methods for the SAX parser below
 	
 	public void startElement(String uri, String localName, String qName, Attributes attributes) {
-		this.currentText = "";
-		if (qName.equals("item")) {
+		this.currentText.setLength(0);
+		switch (elementId(qName)) {
+		case ITEM:
 			this.item = true;
 			this.currentDoc = new DocumentInCollection();
-		}
-		else if (qName.equals("title"))
+			this.currentDoc.setId(attributes.getValue("id"));
+			break;
+		case TITLE:
 			this.title = true;
-		else if (qName.equals("abstract"))
+			break;
+		case ABSTRACT:
 			this.abstractText = true;
-		else if (qName.equals("search_task_number"))
+			break;
+		case SEARCH_TASK_NUMBER:
 			this.searchTaskNumber = true;
-		else if (qName.equals("query"))
+			break;
+		case QUERY:
 			this.query = true;
-		else if (qName.equals("relevance"))
+			break;
+		case RELEVANCE:
 			this.relevance = true;
+			break;
+		}
 	}
 	
 	public void endElement(String uri, String localName, String qName)  {
-		this.currentText = this.currentText.trim();
-		if (qName.equals("item")) {
+		switch (elementId(qName)) {
+		case ITEM:
 			this.item = false;
-			if (this.currentDoc.getTitle() != null)
+			if (this.currentDoc.getTitle() != null) {
+				// items without an explicit id attribute are keyed by their title
+				if (this.currentDoc.getId() == null)
+					this.currentDoc.setId(keys.nextKey(this.currentDoc));
 //				if (this.currentDoc.getSearchTaskNumber() == 4) {
-					docs.add(this.currentDoc);
+					handler.handle(this.currentDoc);
 //				}
-		}
-		else if (qName.equals("title")) {
-			this.currentDoc.setTitle(this.currentText);
+			}
+			break;
+		case TITLE:
+			this.currentDoc.setTitle(trimmedText());
 			this.title = false;
-		}
-		else if (qName.equals("abstract")) {
-			this.currentDoc.setAbstractText(this.currentText);
+			break;
+		case ABSTRACT:
+			this.currentDoc.setAbstractText(trimmedText());
 			this.abstractText = false;
-		}
-		else if (qName.equals("search_task_number")) {
-			this.currentDoc.setSearchTaskNumber(Integer.valueOf(this.currentText));
+			break;
+		case SEARCH_TASK_NUMBER:
+			this.currentDoc.setSearchTaskNumber(Integer.valueOf(trimmedText()));
 			this.searchTaskNumber = false;
-		}
-		else if (qName.equals("query")) {
-			this.currentDoc.setQuery(this.currentText);
+			break;
+		case QUERY:
+			this.currentDoc.setQuery(trimmedText());
 			this.query = false;
-		}
-		else if (qName.equals("relevance")) {
-			if (Integer.valueOf(this.currentText) == 1)
+			break;
+		case RELEVANCE:
+			if (Integer.valueOf(trimmedText()) == 1)
 				this.currentDoc.setRelevant(true);
 			this.relevance = false;
+			break;
 		}
 	}
 	
 	public void characters(char[] ch, int start, int length) {
-		String text = "";
-		for (int i=0; i<length; i++)
-			text += ch[start+i];
-		this.currentText += text;
+		this.currentText.append(ch, start, length);
+	}
+	
+	private static int elementId(String qName) {
+		Integer id = ELEMENTS.get(qName);
+		return id == null ? OTHER : id;
+	}
+	
+	// same as currentText.toString().trim() without the intermediate string
+	private String trimmedText() {
+		int begin = 0;
+		int end = this.currentText.length();
+		while (begin < end && this.currentText.charAt(begin) <= ' ')
+			begin++;
+		while (end > begin && this.currentText.charAt(end - 1) <= ' ')
+			end--;
+		return this.currentText.substring(begin, end);
 	}
 
 }
\ No newline at end of file
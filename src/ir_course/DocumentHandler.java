@@ -0,0 +1,11 @@
+/*
+ * Callback for documents produced by the collection parser
+ */
+package ir_course;
+
+public interface DocumentHandler {
+
+	// called once for every complete <item> in document order
+	void handle(DocumentInCollection doc);
+
+}
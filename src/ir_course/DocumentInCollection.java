@@ -7,6 +7,7 @@ package ir_course;
 
 public class DocumentInCollection {
 
+	private String id;
 	private String title;
 	private String abstractText;
 	private int searchTaskNumber;
@@ -25,6 +26,14 @@ public class DocumentInCollection {
 		this.relevant = relevant;
 	}
 	
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
 	public String getTitle() {
 		return title;
 	}
@@ -66,6 +75,6 @@ public class DocumentInCollection {
 	}
 
 	public String toString() {
-		return "Title: "+title+"\n abstract: "+abstractText+"\n search task number: "+searchTaskNumber+"\n query: "+query+"\n relevant: "+relevant;
+		return "Id: "+id+"\n Title: "+title+"\n abstract: "+abstractText+"\n search task number: "+searchTaskNumber+"\n query: "+query+"\n relevant: "+relevant;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+/*
+ * Stable keys and content hashes for documents of the collection
+ */
+package ir_course;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Derives the id of a document without an explicit id attribute from the hash of its title.
+ * The corpus contains the same title several times (even identical items judged for
+ * different search tasks), so the n:th occurrence of a title gets the suffix "-n".
+ * Ids stay stable as long as items with the same title keep their relative order.
+ */
+public class DocumentKeys {
+
+    private static final HashFunction HASH = Hashing.sha1();
+
+    private final Map<String, Integer> occurrences = new HashMap<>();
+
+    public String nextKey(DocumentInCollection doc) {
+        String base = HASH.hashString(doc.getTitle(), Charsets.UTF_8).toString();
+        Integer seen = occurrences.get(base);
+        int occurrence = seen == null ? 1 : seen + 1;
+        occurrences.put(base, occurrence);
+        return occurrence == 1 ? base : base + "-" + occurrence;
+    }
+
+    // hash over everything that ends up in the index, used to detect edited items
+    public static String contentHash(DocumentInCollection doc) {
+        return HASH.newHasher()
+                .putString(String.valueOf(doc.getTitle()), Charsets.UTF_8).putByte((byte) 0)
+                .putString(String.valueOf(doc.getAbstractText()), Charsets.UTF_8).putByte((byte) 0)
+                .putInt(doc.getSearchTaskNumber())
+                .putString(String.valueOf(doc.getQuery()), Charsets.UTF_8).putByte((byte) 0)
+                .putBoolean(doc.isRelevant())
+                .hash().toString();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Reusable Lucene document for one indexing thread
+ */
+package ir_course;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+
+/**
+ * Holds one Document with all index fields and only swaps the field values for every
+ * item, so indexing allocates no Document or Field objects per item. IndexWriter is done
+ * with a document when addDocument returns, so the same template can be filled again
+ * right after; it must not be shared between threads.
+ */
+public class DocumentTemplate {
+
+    private final Field id = new StringField(LuceneSearchApp.ID, "", Field.Store.YES);
+    private final Field hash = new StoredField(LuceneSearchApp.HASH, "");
+    private final Field qrels = new StringField(LuceneSearchApp.QRELS, "", Field.Store.NO);
+    private final Field query = new StringField(LuceneSearchApp.QUERY, "", Field.Store.NO);
+    private final Field relevant = new Field(LuceneSearchApp.RELEVANT, "", TextField.TYPE_STORED);
+    private final Field title = new Field(LuceneSearchApp.TITLE, "", TextField.TYPE_STORED);
+    private final Field abstractText = new Field(LuceneSearchApp.ABSTRACT, "", TextField.TYPE_STORED);
+    private final Document document = new Document();
+    // only added once an item is filled with its position
+    private NumericDocValuesField order;
+
+    public DocumentTemplate() {
+        document.add(id);
+        document.add(hash);
+        document.add(qrels);
+        document.add(query);
+        document.add(relevant);
+        document.add(title);
+        document.add(abstractText);
+    }
+
+    // the template's document holding the values of the given item
+    public Document fill(DocumentInCollection documentInCollection) {
+        id.setStringValue(documentInCollection.getId());
+        hash.setStringValue(DocumentKeys.contentHash(documentInCollection));
+        qrels.setStringValue(qrelsValue(documentInCollection));
+        query.setStringValue(queryValue(documentInCollection));
+        relevant.setStringValue(relevantValue(documentInCollection));
+        title.setStringValue(documentInCollection.getTitle());
+        abstractText.setStringValue(documentInCollection.getAbstractText());
+        return document;
+    }
+
+    /* The template's document holding the values of the given item and its position in
+     * the corpus as ORDER, for indexes whose doc ids do not follow the corpus order. A
+     * template filled this way once always has the ORDER field.
+     */
+    public Document fill(DocumentInCollection documentInCollection, int position) {
+        if (order == null) {
+            order = new NumericDocValuesField(LuceneSearchApp.ORDER, position);
+            document.add(order);
+        }
+        order.setLongValue(position);
+        return fill(documentInCollection);
+    }
+
+    // value of the QRELS field, "task:1" if the item is relevant for its search task, otherwise "task:0"
+    static String qrelsValue(DocumentInCollection documentInCollection) {
+        return documentInCollection.getSearchTaskNumber() + (documentInCollection.isRelevant() ? ":1" : ":0");
+    }
+
+    // value of the QUERY field, "task:query"
+    static String queryValue(DocumentInCollection documentInCollection) {
+        String query = documentInCollection.getQuery();
+        return documentInCollection.getSearchTaskNumber() + ":" + (query == null ? "" : query);
+    }
+
+    // value of the RELEVANT field, which only keeps the judgments of search task 4; see Judgments for all tasks
+    static String relevantValue(DocumentInCollection documentInCollection) {
+        if (documentInCollection.isRelevant() && documentInCollection.getSearchTaskNumber() == 4) {
+            return "true";
+        }
+        return "false";
+    }
+}
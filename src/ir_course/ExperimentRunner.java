@@ -0,0 +1,119 @@
+/*
+ * Runs a grid of LuceneSearchApp configurations in parallel
+ */
+package ir_course;
+
+import com.google.common.base.Joiner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Every configuration (the same arguments LuceneSearchApp.main takes) gets its own
+ * LuceneSearchApp instance. Configurations that resolve to the same index directory, i.e.
+ * the same analyzer and norms, and index the same corpus share one index; configurations
+ * whose corpora differ must not resolve to the same directory (give them their own
+ * indexRoot). Each index is built once in a first phase, then all configurations search
+ * in parallel with their own similarity. RAM and near-real-time indexes are private to
+ * their instance and are built once per configuration; near-real-time configurations must
+ * use storage=ram. Results are returned in the order of the configurations, and the query
+ * metrics of the configurations that record them are kept until the next run.
+ */
+public class ExperimentRunner {
+
+    private final int threads;
+    // query metrics by configuration arguments, of the last run
+    private final Map<String, QueryMetrics> queryMetrics = new LinkedHashMap<>();
+
+    public ExperimentRunner(int threads) {
+        this.threads = threads;
+    }
+
+    // the TikZ addplot command of every configuration, in the given order
+    public List<String> run(String[]... configurations) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final List<LuceneSearchApp> engines = new ArrayList<>();
+            Map<Object, Callable<Void>> indexTasks = new LinkedHashMap<>();
+            // corpus of every shared index directory
+            Map<File, File> corpora = new HashMap<>();
+            for (final String[] args : configurations) {
+                final List<String> argList = Arrays.asList(args);
+                final LuceneSearchApp engine = new LuceneSearchApp();
+                engine.configure(argList, true);
+                engines.add(engine);
+                Object index = engine;
+                if (engine.isIndexShared()) {
+                    File corpus = new File(args[0]).getAbsoluteFile();
+                    File previous = corpora.put(engine.getIndexDir(), corpus);
+                    if (previous != null && !previous.equals(corpus)) {
+                        throw new IllegalArgumentException("Configurations index " + previous + " and " + corpus
+                                + " into the same directory " + engine.getIndexDir());
+                    }
+                    index = Arrays.asList(engine.getIndexDir(), corpus);
+                }
+                if (!indexTasks.containsKey(index)) {
+                    indexTasks.put(index, new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            engine.ensureIndex(args[0], argList);
+                            return null;
+                        }
+                    });
+                }
+            }
+            getAll(pool.invokeAll(indexTasks.values()));
+
+            List<Callable<String>> runs = new ArrayList<>();
+            for (int i = 0; i < configurations.length; i++) {
+                final LuceneSearchApp engine = engines.get(i);
+                final List<String> argList = Arrays.asList(configurations[i]);
+                runs.add(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return engine.runQueries(argList);
+                    }
+                });
+            }
+            List<String> plots = getAll(pool.invokeAll(runs));
+            queryMetrics.clear();
+            for (int i = 0; i < configurations.length; i++) {
+                if (engines.get(i).getQueryMetrics() != null) {
+                    queryMetrics.put(Joiner.on(' ').join(configurations[i]), engines.get(i).getQueryMetrics());
+                }
+            }
+            return plots;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public Map<String, QueryMetrics> queryMetrics() {
+        return queryMetrics;
+    }
+
+    private static <T> List<T> getAll(List<Future<T>> futures) throws InterruptedException {
+        List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Experiment failed", e.getCause());
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * BM25Similarity with per-field idf and length normalization tables
+ */
+package ir_course;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.FieldInvertState;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.SmallFloat;
+
+import java.io.IOException;
+
+/**
+ * Scores exactly like BM25Similarity and writes the same norms (which are also
+ * DefaultSimilarity's). BM25Similarity computes the 256 entry length normalization table
+ * and the idf for every query term of every query; here both come from the per-field
+ * tables. BM25Similarity's scoring methods are final, so the weight and the scorers
+ * repeat its arithmetic step by step to give bit-identical scores.
+ */
+public class FastBM25Similarity extends TableDrivenSimilarity {
+
+    // BM25Similarity.NORM_TABLE, 1 / length^2 of the encoded 1 / sqrt(length)
+    private static final float[] NORM_TABLE = new float[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            float f = SmallFloat.byte315ToFloat((byte) i);
+            NORM_TABLE[i] = 1.0f / (f * f);
+        }
+    }
+
+    private final float k1;
+    private final float b;
+    private final BM25Similarity base;
+
+    public FastBM25Similarity() {
+        this(1.2f, 0.75f);
+    }
+
+    public FastBM25Similarity(float k1, float b) {
+        this.k1 = k1;
+        this.b = b;
+        this.base = new BM25Similarity(k1, b);
+    }
+
+    @Override
+    public long computeNorm(FieldInvertState state) {
+        return base.computeNorm(state);
+    }
+
+    @Override
+    protected float computeIdf(CollectionStatistics collectionStats, long docFreq) {
+        return base.idfExplain(collectionStats, new TermStatistics(new BytesRef(), docFreq, -1)).getValue();
+    }
+
+    // k1 * ((1 - b) + b * length / avgdl) for every norm byte
+    @Override
+    protected float[] computeNormTable(CollectionStatistics collectionStats) {
+        long sumTotalTermFreq = collectionStats.sumTotalTermFreq();
+        float avgdl = sumTotalTermFreq <= 0 ? 1f : (float) (sumTotalTermFreq / (double) collectionStats.maxDoc());
+        float[] cache = new float[256];
+        for (int i = 0; i < cache.length; i++) {
+            cache[i] = k1 * ((1 - b) + b * NORM_TABLE[i] / avgdl);
+        }
+        return cache;
+    }
+
+    @Override
+    public SimWeight computeWeight(float queryBoost, CollectionStatistics collectionStats, TermStatistics... termStats) {
+        FieldTables fieldTables = tables(collectionStats);
+        return new Weight(collectionStats.field(), idf(collectionStats, fieldTables, termStats), queryBoost, fieldTables.norms);
+    }
+
+    @Override
+    public ExactSimScorer exactSimScorer(SimWeight weight, AtomicReaderContext context) throws IOException {
+        final Weight w = (Weight) weight;
+        final NumericDocValues norms = context.reader().getNormValues(w.field);
+        final float weightValue = w.weight * (k1 + 1);
+        if (norms == null) {
+            return new ExactSimScorer() {
+                @Override
+                public float score(int doc, int freq) {
+                    return weightValue * freq / (freq + k1);
+                }
+            };
+        }
+        final float[] cache = w.cache;
+        return new ExactSimScorer() {
+            @Override
+            public float score(int doc, int freq) {
+                return weightValue * freq / (freq + cache[(byte) norms.get(doc) & 0xFF]);
+            }
+        };
+    }
+
+    @Override
+    public SloppySimScorer sloppySimScorer(SimWeight weight, AtomicReaderContext context) throws IOException {
+        final Weight w = (Weight) weight;
+        final NumericDocValues norms = context.reader().getNormValues(w.field);
+        final float weightValue = w.weight * (k1 + 1);
+        final float[] cache = w.cache;
+        return new SloppySimScorer() {
+            @Override
+            public float score(int doc, float freq) {
+                float norm = norms == null ? k1 : cache[(byte) norms.get(doc) & 0xFF];
+                return weightValue * freq / (freq + norm);
+            }
+
+            @Override
+            public float computeSlopFactor(int distance) {
+                return 1.0f / (distance + 1);
+            }
+
+            @Override
+            public float computePayloadFactor(int doc, int start, int end, BytesRef payload) {
+                return 1;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "Fast-" + base;
+    }
+
+    // BM25Similarity.BM25Stats
+    private static final class Weight extends SimWeight {
+        final String field;
+        final float idf;
+        final float queryBoost;
+        final float[] cache;
+        float weight;
+
+        Weight(String field, float idf, float queryBoost, float[] cache) {
+            this.field = field;
+            this.idf = idf;
+            this.queryBoost = queryBoost;
+            this.cache = cache;
+        }
+
+        @Override
+        public float getValueForNormalization() {
+            float queryWeight = idf * queryBoost;
+            return queryWeight * queryWeight;
+        }
+
+        @Override
+        public void normalize(float queryNorm, float topLevelBoost) {
+            weight = idf * queryBoost * topLevelBoost;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * MoreLikeVSMSimilarity with table lookups and a norm-free scoring loop
+ */
+package ir_course;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.FieldInvertState;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Scores exactly like MoreLikeVSMSimilarity (raw tf, log(N/df) idf, no length norm) and
+ * writes the same norms, so it searches the same index. Every document of a
+ * MoreLikeVSM index has the norm 1.0; a segment whose norms are all one value is scored
+ * as freq * weight without reading norms, and the multiplication is only kept when that
+ * value is not 1.0. TFIDFSimilarity's scoring methods are final, so the weight and the
+ * scorers repeat its arithmetic step by step to give bit-identical scores.
+ */
+public class FastVSMSimilarity extends TableDrivenSimilarity {
+
+    // norm of every document of a segment and field if they are all the same, otherwise NaN;
+    // by segment core, only accessed while holding its lock
+    private final Map<Object, Map<String, Float>> constantNorms = new WeakHashMap<>();
+
+    private final MoreLikeVSMSimilarity base = new MoreLikeVSMSimilarity();
+    private final float[] normTable = new float[256];
+
+    public FastVSMSimilarity() {
+        for (int i = 0; i < normTable.length; i++) {
+            normTable[i] = base.decodeNormValue((byte) i);
+        }
+    }
+
+    @Override
+    public long computeNorm(FieldInvertState state) {
+        return base.computeNorm(state);
+    }
+
+    @Override
+    public float coord(int overlap, int maxOverlap) {
+        return base.coord(overlap, maxOverlap);
+    }
+
+    @Override
+    public float queryNorm(float valueForNormalization) {
+        return base.queryNorm(valueForNormalization);
+    }
+
+    @Override
+    protected float computeIdf(CollectionStatistics collectionStats, long docFreq) {
+        return base.idf(docFreq, collectionStats.maxDoc());
+    }
+
+    @Override
+    public SimWeight computeWeight(float queryBoost, CollectionStatistics collectionStats, TermStatistics... termStats) {
+        return new Weight(collectionStats.field(), idf(collectionStats, tables(collectionStats), termStats), queryBoost);
+    }
+
+    @Override
+    public ExactSimScorer exactSimScorer(SimWeight weight, AtomicReaderContext context) throws IOException {
+        final Weight w = (Weight) weight;
+        final NumericDocValues norms = context.reader().getNormValues(w.field);
+        final float value = w.value;
+        if (norms == null) {
+            return new ExactSimScorer() {
+                @Override
+                public float score(int doc, int freq) {
+                    return freq * value;
+                }
+            };
+        }
+        float constant = constantNorm(context.reader(), w.field, norms);
+        if (constant == 1.0f) {
+            // raw * 1.0f == raw, the norm can be skipped without changing a bit
+            return new ExactSimScorer() {
+                @Override
+                public float score(int doc, int freq) {
+                    return freq * value;
+                }
+            };
+        }
+        final float[] table = normTable;
+        return new ExactSimScorer() {
+            @Override
+            public float score(int doc, int freq) {
+                return freq * value * table[(byte) norms.get(doc) & 0xFF];
+            }
+        };
+    }
+
+    @Override
+    public SloppySimScorer sloppySimScorer(SimWeight weight, AtomicReaderContext context) throws IOException {
+        final Weight w = (Weight) weight;
+        final NumericDocValues norms = context.reader().getNormValues(w.field);
+        final float value = w.value;
+        return new SloppySimScorer() {
+            @Override
+            public float score(int doc, float freq) {
+                float raw = base.tf(freq) * value;
+                return norms == null ? raw : raw * normTable[(byte) norms.get(doc) & 0xFF];
+            }
+
+            @Override
+            public float computeSlopFactor(int distance) {
+                return base.sloppyFreq(distance);
+            }
+
+            @Override
+            public float computePayloadFactor(int doc, int start, int end, BytesRef payload) {
+                return base.scorePayload(doc, start, end, payload);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "Fast-" + base;
+    }
+
+    private float constantNorm(AtomicReader reader, String field, NumericDocValues norms) {
+        Object key = reader.getCoreCacheKey();
+        synchronized (constantNorms) {
+            Map<String, Float> fields = constantNorms.get(key);
+            if (fields == null) {
+                fields = new HashMap<>();
+                constantNorms.put(key, fields);
+            }
+            Float constant = fields.get(field);
+            if (constant == null) {
+                constant = scanNorms(reader.maxDoc(), norms);
+                fields.put(field, constant);
+            }
+            return constant;
+        }
+    }
+
+    private float scanNorms(int maxDoc, NumericDocValues norms) {
+        if (maxDoc == 0) {
+            return Float.NaN;
+        }
+        long first = norms.get(0);
+        for (int doc = 1; doc < maxDoc; doc++) {
+            if (norms.get(doc) != first) {
+                return Float.NaN;
+            }
+        }
+        return normTable[(byte) first & 0xFF];
+    }
+
+    // TFIDFSimilarity.IDFStats
+    private static final class Weight extends SimWeight {
+        final String field;
+        final float idf;
+        final float queryBoost;
+        float queryWeight;
+        float value;
+
+        Weight(String field, float idf, float queryBoost) {
+            this.field = field;
+            this.idf = idf;
+            this.queryBoost = queryBoost;
+            this.queryWeight = idf * queryBoost;
+        }
+
+        @Override
+        public float getValueForNormalization() {
+            return queryWeight * queryWeight;
+        }
+
+        @Override
+        public void normalize(float queryNorm, float topLevelBoost) {
+            queryWeight *= queryNorm * topLevelBoost;
+            value = queryWeight * idf;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * QueryMetrics kept in fixed-size log-linear histograms
+ */
+package ir_course;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Every phase and counter has a histogram whose buckets split each power of two into
+ * eight, so a percentile is reported within 12.5% of the recorded value (exactly below
+ * 16) with 488 buckets, whatever the number of queries. Recording is an array increment
+ * plus the running sum and maximum, all lock-free.
+ */
+public class HistogramMetrics implements QueryMetrics {
+
+    private final Map<Phase, Histogram> phases = new EnumMap<>(Phase.class);
+    private final Map<Counter, Histogram> counters = new EnumMap<>(Counter.class);
+
+    public HistogramMetrics() {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new Histogram());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new Histogram());
+        }
+    }
+
+    @Override
+    public void record(Phase phase, long nanos) {
+        phases.get(phase).add(nanos);
+    }
+
+    @Override
+    public void count(Counter counter, long value) {
+        counters.get(counter).add(value);
+    }
+
+    public Histogram histogram(Phase phase) {
+        return phases.get(phase);
+    }
+
+    public Histogram histogram(Counter counter) {
+        return counters.get(counter);
+    }
+
+    /* {"phases": {"parse": {"count": .., "totalMs": .., "meanMs": .., "p50Ms": .., ...}, ...},
+     *  "counters": {"hits": {"count": .., "total": .., "mean": .., "p50": .., ...}, ...}}
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"phases\": {");
+        int i = 0;
+        for (Map.Entry<Phase, Histogram> e : phases.entrySet()) {
+            Histogram h = e.getValue();
+            json.append(i++ > 0 ? ", " : "").append(quote(e.getKey())).append(String.format(
+                    ": {\"count\": %d, \"totalMs\": %.6f, \"meanMs\": %.6f, \"p50Ms\": %.6f, \"p95Ms\": %.6f, "
+                            + "\"p99Ms\": %.6f, \"maxMs\": %.6f}",
+                    h.count(), h.sum() / 1e6, h.mean() / 1e6, h.percentile(50) / 1e6, h.percentile(95) / 1e6,
+                    h.percentile(99) / 1e6, h.max() / 1e6));
+        }
+        json.append("}, \"counters\": {");
+        i = 0;
+        for (Map.Entry<Counter, Histogram> e : counters.entrySet()) {
+            Histogram h = e.getValue();
+            json.append(i++ > 0 ? ", " : "").append(quote(e.getKey())).append(String.format(
+                    ": {\"count\": %d, \"total\": %d, \"mean\": %.3f, \"p50\": %d, \"p95\": %d, \"p99\": %d, \"max\": %d}",
+                    h.count(), h.sum(), h.mean(), h.percentile(50), h.percentile(95), h.percentile(99), h.max()));
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String quote(Enum<?> name) {
+        return "\"" + name.name().toLowerCase() + "\"";
+    }
+
+    public static class Histogram {
+
+        // values below this get a bucket each
+        private static final int LINEAR = 16;
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void add(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets.incrementAndGet(bucket(value));
+            sum.addAndGet(value);
+            long current;
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            }
+        }
+
+        public long count() {
+            long count = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        public long sum() {
+            return sum.get();
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        public double mean() {
+            long count = count();
+            return count == 0 ? 0 : sum() / (double) count;
+        }
+
+        // nearest-rank percentile, the upper bound of its bucket; p in (0, 100]
+        public long percentile(double p) {
+            long count = count();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max((long) Math.ceil(p / 100 * count), 1);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max());
+                }
+            }
+            return max();
+        }
+
+        private static int bucket(long value) {
+            if (value < LINEAR) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < LINEAR) {
+                return bucket;
+            }
+            int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+            long sub = (bucket - LINEAR) % SUB_BUCKETS;
+            long width = 1L << (exponent - SUB_BUCKET_BITS);
+            return (1L << exponent) + (sub + 1) * width - 1;
+        }
+    }
+}
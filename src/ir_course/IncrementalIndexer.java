@@ -0,0 +1,121 @@
+/*
+ * Applies only the changed items of a corpus to an existing index
+ */
+package ir_course;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Receives the parsed documents one by one and compares them by id and content hash
+ * against the documents already in the index: new ids are added, changed ones replaced
+ * with updateDocument and ids that did not show up in the corpus are deleted in finish().
+ */
+public class IncrementalIndexer implements DocumentHandler {
+
+    private final IndexWriter writer;
+    // id -> content hash of every document in the index before the update
+    private final Map<String, String> indexed;
+    private final Set<String> seen = new HashSet<>();
+    private final DocumentTemplate template = new DocumentTemplate();
+
+    private int added;
+    private int updated;
+    private int deleted;
+    private int unchanged;
+
+    public IncrementalIndexer(IndexWriter writer) throws IOException {
+        this.writer = writer;
+        this.indexed = readIndexedHashes(writer);
+    }
+
+    @Override
+    public void handle(DocumentInCollection doc) {
+        String id = doc.getId();
+        if (!seen.add(id)) {
+            throw new IllegalArgumentException("Duplicate document id " + id);
+        }
+        String oldHash = indexed.get(id);
+        try {
+            if (oldHash == null) {
+                writer.addDocument(template.fill(doc));
+                added++;
+            } else if (!oldHash.equals(DocumentKeys.contentHash(doc))) {
+                writer.updateDocument(new Term(LuceneSearchApp.ID, id), template.fill(doc));
+                updated++;
+            } else {
+                unchanged++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // deletes the documents that are no longer in the corpus
+    public void finish() throws IOException {
+        for (String id : indexed.keySet()) {
+            if (!seen.contains(id)) {
+                writer.deleteDocuments(new Term(LuceneSearchApp.ID, id));
+                deleted++;
+            }
+        }
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    @Override
+    public String toString() {
+        return "added: " + added + ", updated: " + updated + ", deleted: " + deleted + ", unchanged: " + unchanged;
+    }
+
+    private static Map<String, String> readIndexedHashes(IndexWriter writer) throws IOException {
+        if (!DirectoryReader.indexExists(writer.getDirectory())) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> hashes = new HashMap<>();
+        Set<String> fields = new HashSet<>();
+        fields.add(LuceneSearchApp.ID);
+        fields.add(LuceneSearchApp.HASH);
+        DirectoryReader reader = DirectoryReader.open(writer.getDirectory());
+        try {
+            for (AtomicReaderContext context : reader.leaves()) {
+                AtomicReader leaf = context.reader();
+                Bits live = leaf.getLiveDocs();
+                for (int i = 0; i < leaf.maxDoc(); i++) {
+                    if (live != null && !live.get(i)) continue;
+                    Document d = leaf.document(i, fields);
+                    hashes.put(d.get(LuceneSearchApp.ID), d.get(LuceneSearchApp.HASH));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return hashes;
+    }
+}
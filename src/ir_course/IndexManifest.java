@@ -0,0 +1,98 @@
+/*
+ * Describes what an index directory was built from
+ */
+package ir_course;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.similarities.Similarity;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Records the corpus checksum, analyzer, similarity and document schema of an index.
+ * The manifest is written into the index directory only after the writer has been closed,
+ * so an index whose manifest matches the current configuration is complete and can be
+ * reused without parsing or indexing anything.
+ */
+public class IndexManifest {
+
+    public static final String FILENAME = "manifest.properties";
+
+    // bump whenever DocumentTemplate changes the indexed fields
+    public static final int SCHEMA_VERSION = 4;
+
+    private static final String CORPUS = "corpus.sha1";
+    private static final String ANALYZER = "analyzer";
+    private static final String SIMILARITY = "similarity";
+    private static final String SCHEMA = "schema";
+
+    private final Properties properties;
+
+    private IndexManifest(Properties properties) {
+        this.properties = properties;
+    }
+
+    public static IndexManifest create(File corpus, Analyzer analyzer, Similarity similarity) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(CORPUS, corpusChecksum(corpus));
+        properties.setProperty(ANALYZER, analyzer.getClass().getName());
+        properties.setProperty(SIMILARITY, similarity.getClass().getName() + " " + similarity);
+        properties.setProperty(SCHEMA, String.valueOf(SCHEMA_VERSION));
+        return new IndexManifest(properties);
+    }
+
+    public static String corpusChecksum(File corpus) throws IOException {
+        return Files.hash(corpus, Hashing.sha1()).toString();
+    }
+
+    // true if indexDir holds a complete index built from the same configuration
+    public boolean matches(File indexDir) throws IOException {
+        return properties.equals(read(indexDir));
+    }
+
+    // true if indexDir was built with the same analyzer, similarity and schema from any
+    // version of the corpus, i.e. it can be brought up to date incrementally
+    public boolean matchesConfiguration(File indexDir) throws IOException {
+        Properties stored = read(indexDir);
+        if (stored == null) {
+            return false;
+        }
+        stored.setProperty(CORPUS, properties.getProperty(CORPUS));
+        return stored.equals(properties);
+    }
+
+    // removes the manifest so a partially rebuilt index is never reused
+    public static void invalidate(File indexDir) throws IOException {
+        File file = new File(indexDir, FILENAME);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+
+    public void write(File indexDir) throws IOException {
+        try (OutputStream out = new FileOutputStream(new File(indexDir, FILENAME))) {
+            properties.store(out, "written by LuceneSearchApp, delete to force re-indexing");
+        }
+    }
+
+    private static Properties read(File indexDir) throws IOException {
+        File file = new File(indexDir, FILENAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties stored = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            stored.load(in);
+        }
+        return stored;
+    }
+}
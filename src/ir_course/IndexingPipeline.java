@@ -0,0 +1,81 @@
+/*
+ * Bounded producer/consumer pipeline from the collection parser into an IndexWriter
+ */
+package ir_course;
+
+import org.apache.lucene.index.IndexWriter;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The parser thread calls handle() for every finished document, which blocks while the
+ * queue is full. A fixed number of worker threads drain the queue and add the documents
+ * to the shared IndexWriter, so parsing overlaps with analysis and at most queueSize
+ * parsed documents are on the heap at any time.
+ *
+ * Documents are added in whatever order the workers finish them, so doc ids (and thus
+ * tie-breaking between equal scores) can differ from a single-threaded index.
+ */
+public class IndexingPipeline implements DocumentHandler {
+
+    // marks the end of the stream, one per worker
+    private static final DocumentInCollection END = new DocumentInCollection();
+
+    private final IndexWriter writer;
+    private final BlockingQueue<DocumentInCollection> queue;
+    private final int threads;
+    private final IndexingWorkers workers = new IndexingWorkers("indexer");
+
+    public IndexingPipeline(IndexWriter writer, int threads, int queueSize) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Indexing needs at least one thread, not " + threads);
+        }
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.threads = threads;
+        for (int i = 0; i < threads; i++) {
+            workers.start(new Worker());
+        }
+    }
+
+    @Override
+    public void handle(DocumentInCollection doc) {
+        workers.check();
+        put(doc);
+    }
+
+    // waits until every queued document has been added to the writer
+    public void finish() {
+        for (int i = 0; i < threads; i++) {
+            put(END);
+        }
+        workers.join();
+    }
+
+    private void put(DocumentInCollection doc) {
+        try {
+            queue.put(doc);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private class Worker implements IndexingWorkers.Task {
+        @Override
+        public void run(DocumentTemplate template) throws InterruptedException {
+            DocumentInCollection doc;
+            while ((doc = queue.take()) != END) {
+                // keep draining after a failure so the parser never blocks on a full queue
+                if (workers.failed()) continue;
+                try {
+                    writer.addDocument(template.fill(doc));
+                } catch (IOException | RuntimeException e) {
+                    workers.fail(e);
+                }
+            }
+        }
+    }
+}
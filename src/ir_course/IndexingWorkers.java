@@ -0,0 +1,75 @@
+/*
+ * Indexing threads that stop at the first failure and report it to the caller
+ */
+package ir_course;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs every task on its own thread with its own DocumentTemplate. The first exception
+ * of any task is kept; the other tasks can poll failed() to stop early, and join()
+ * rethrows it once every thread has finished. Used by all indexers that add documents
+ * from several threads.
+ */
+public class IndexingWorkers {
+
+    public interface Task {
+        void run(DocumentTemplate template) throws Exception;
+    }
+
+    private final String name;
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    // threads are named name-0, name-1, ...
+    public IndexingWorkers(String name) {
+        this.name = name;
+    }
+
+    public void start(final Task task) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run(new DocumentTemplate());
+                } catch (Exception e) {
+                    fail(e);
+                }
+            }
+        }, name + "-" + threads.size());
+        threads.add(thread);
+        thread.start();
+    }
+
+    // records e unless an earlier failure is already recorded
+    public void fail(Throwable e) {
+        failure.compareAndSet(null, e);
+    }
+
+    public boolean failed() {
+        return failure.get() != null;
+    }
+
+    // throws the first failure of any task, if there was one
+    public void check() {
+        Throwable e = failure.get();
+        if (e != null) {
+            throw new RuntimeException("Indexing worker failed", e);
+        }
+    }
+
+    // waits for every thread, then throws the first failure of any task
+    public void join() {
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        check();
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Relevance judgments of every search topic as bitsets over the doc ids of an index
+ */
+package ir_course;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.ChecksumIndexOutput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Every item of the corpus is judged for the search task it was collected for. The index
+ * keeps the judgment as a QRELS term "task:1" or "task:0" and the query as a QUERY term
+ * "task:query" on every document; collect() turns their postings into one FixedBitSet of
+ * relevant doc ids and the list of queries per topic. The result is written to FILENAME
+ * next to the index when the index is built, and read back instead of collected again as
+ * long as the index version has not changed. Readers of another version, e.g. near-real-time
+ * readers, get freshly collected judgments. Readers that have no version, like the MultiReader
+ * of a sharded index, only match the judgments collected from themselves.
+ */
+public class Judgments {
+
+    public static final String FILENAME = "judgments.bin";
+    private static final String CODEC = "Judgments";
+    private static final int FORMAT = 1;
+
+    private final long version;
+    private final int maxDoc;
+    private final SortedMap<Integer, Topic> topics;
+    // core and deletes key of the reader collected from if it is not a DirectoryReader
+    private final Object readerKey;
+
+    private Judgments(long version, int maxDoc, SortedMap<Integer, Topic> topics, Object readerKey) {
+        this.version = version;
+        this.maxDoc = maxDoc;
+        this.topics = topics;
+        this.readerKey = readerKey;
+    }
+
+    // the judgments written for reader's index version, or collected from reader if there are none
+    public static Judgments open(Directory dir, IndexReader reader) throws IOException {
+        if (reader instanceof DirectoryReader) {
+            Judgments judgments = load(dir);
+            if (judgments != null && judgments.matches(reader)) {
+                return judgments;
+            }
+        }
+        return collect(reader);
+    }
+
+    public static Judgments collect(IndexReader reader) throws IOException {
+        SortedMap<Integer, Topic> topics = new TreeMap<>();
+        int maxDoc = reader.maxDoc();
+        Terms qrels = MultiFields.getTerms(reader, LuceneSearchApp.QRELS);
+        TermsEnum termsEnum = qrels == null ? null : qrels.iterator(null);
+        DocsEnum docs = null;
+        BytesRef term;
+        while (termsEnum != null && (term = termsEnum.next()) != null) {
+            String judgment = term.utf8ToString();
+            int separator = judgment.indexOf(':');
+            Topic topic = topic(topics, Integer.parseInt(judgment.substring(0, separator)), maxDoc);
+            if (judgment.substring(separator + 1).equals("1")) {
+                // deleted documents are included, searches never return them anyway
+                docs = termsEnum.docs(null, docs, DocsEnum.FLAG_NONE);
+                int doc;
+                while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    topic.relevant.set(doc);
+                }
+            }
+        }
+        Terms queries = MultiFields.getTerms(reader, LuceneSearchApp.QUERY);
+        termsEnum = queries == null ? null : queries.iterator(null);
+        while (termsEnum != null && (term = termsEnum.next()) != null) {
+            String query = term.utf8ToString();
+            int separator = query.indexOf(':');
+            topic(topics, Integer.parseInt(query.substring(0, separator)), maxDoc).queries.add(query.substring(separator + 1));
+        }
+        if (reader instanceof DirectoryReader) {
+            return new Judgments(((DirectoryReader) reader).getVersion(), maxDoc, topics, null);
+        }
+        return new Judgments(-1, maxDoc, topics, reader.getCombinedCoreAndDeletesKey());
+    }
+
+    // the judgments in dir, or null if there are none or they are incomplete
+    public static Judgments load(Directory dir) throws IOException {
+        if (!dir.fileExists(FILENAME)) {
+            return null;
+        }
+        try (ChecksumIndexInput in = new ChecksumIndexInput(dir.openInput(FILENAME, IOContext.READONCE))) {
+            CodecUtil.checkHeader(in, CODEC, FORMAT, FORMAT);
+            long version = in.readLong();
+            int maxDoc = in.readVInt();
+            SortedMap<Integer, Topic> topics = new TreeMap<>();
+            for (int count = in.readVInt(); count > 0; count--) {
+                Topic topic = topic(topics, in.readVInt(), maxDoc);
+                for (int queries = in.readVInt(); queries > 0; queries--) {
+                    topic.queries.add(in.readString());
+                }
+                long[] bits = topic.relevant.getBits();
+                for (int i = 0; i < bits.length; i++) {
+                    bits[i] = in.readLong();
+                }
+            }
+            long checksum = in.getChecksum();
+            if (checksum != in.readLong()) {
+                return null;
+            }
+            return new Judgments(version, maxDoc, topics, null);
+        } catch (IOException e) {
+            // a file cut short by a failed build is rebuilt from the index
+            return null;
+        }
+    }
+
+    public void write(Directory dir) throws IOException {
+        if (dir.fileExists(FILENAME)) {
+            dir.deleteFile(FILENAME);
+        }
+        try (ChecksumIndexOutput out = new ChecksumIndexOutput(dir.createOutput(FILENAME, IOContext.DEFAULT))) {
+            CodecUtil.writeHeader(out, CODEC, FORMAT);
+            out.writeLong(version);
+            out.writeVInt(maxDoc);
+            out.writeVInt(topics.size());
+            for (Topic topic : topics.values()) {
+                out.writeVInt(topic.number);
+                out.writeVInt(topic.queries.size());
+                for (String query : topic.queries) {
+                    out.writeString(query);
+                }
+                for (long word : topic.relevant.getBits()) {
+                    out.writeLong(word);
+                }
+            }
+            out.writeLong(out.getChecksum());
+        }
+    }
+
+    // whether these judgments were collected from reader's version of the index
+    public boolean matches(IndexReader reader) {
+        if (!(reader instanceof DirectoryReader)) {
+            return readerKey != null && readerKey == reader.getCombinedCoreAndDeletesKey();
+        }
+        return readerKey == null && ((DirectoryReader) reader).getVersion() == version
+                && reader.maxDoc() == maxDoc;
+    }
+
+    // topic numbers in ascending order
+    public Set<Integer> topics() {
+        return Collections.unmodifiableSet(topics.keySet());
+    }
+
+    // the distinct queries of the topic in term order
+    public List<String> queries(int topic) {
+        Topic t = topics.get(topic);
+        return t == null ? Collections.<String>emptyList() : Collections.unmodifiableList(t.queries);
+    }
+
+    // doc ids of the documents judged relevant for the topic
+    public Bits relevant(int topic) {
+        Topic t = topics.get(topic);
+        return t == null ? new Bits.MatchNoBits(maxDoc) : t.relevant;
+    }
+
+    // recall denominator: relevant documents that are not deleted
+    public int countRelevant(int topic, IndexReader reader) {
+        Topic t = topics.get(topic);
+        if (t == null) {
+            return 0;
+        }
+        Bits live = MultiFields.getLiveDocs(reader);
+        if (live == null) {
+            return t.relevant.cardinality();
+        }
+        int count = 0;
+        for (int doc = 0; doc < maxDoc; doc++) {
+            if (t.relevant.get(doc) && live.get(doc)) count++;
+        }
+        return count;
+    }
+
+    private static Topic topic(SortedMap<Integer, Topic> topics, int number, int maxDoc) {
+        Topic topic = topics.get(number);
+        if (topic == null) {
+            topic = new Topic(number, maxDoc);
+            topics.put(number, topic);
+        }
+        return topic;
+    }
+
+    private static class Topic {
+        final int number;
+        final List<String> queries = new ArrayList<>();
+        final FixedBitSet relevant;
+
+        Topic(int number, int maxDoc) {
+            this.number = number;
+            this.relevant = new FixedBitSet(maxDoc);
+        }
+    }
+}
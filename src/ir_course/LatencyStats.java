@@ -0,0 +1,52 @@
+/*
+ * Latency percentiles and throughput of a batch of operations
+ */
+package ir_course;
+
+import java.util.Arrays;
+
+public class LatencyStats {
+
+    private final long[] latencies;
+    private final long wallNanos;
+
+    // latencies of the individual operations and the wall clock time of the whole batch, in nanoseconds
+    public LatencyStats(long[] latencies, long wallNanos) {
+        this.latencies = latencies.clone();
+        Arrays.sort(this.latencies);
+        this.wallNanos = wallNanos;
+    }
+
+    public int count() {
+        return latencies.length;
+    }
+
+    // the latencies in nanoseconds, in ascending order
+    public long[] latencies() {
+        return latencies.clone();
+    }
+
+    public long wallNanos() {
+        return wallNanos;
+    }
+
+    // operations per second over the wall clock time of the batch
+    public double throughput() {
+        return latencies.length / (wallNanos / 1e9);
+    }
+
+    // nearest-rank percentile in milliseconds, p in (0, 100]
+    public double percentileMillis(double p) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100 * latencies.length);
+        return latencies[Math.max(rank, 1) - 1] / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d, %.1f/s, p50=%.3f ms, p95=%.3f ms, p99=%.3f ms",
+                count(), throughput(), percentileMillis(50), percentileMillis(95), percentileMillis(99));
+    }
+}
@@ -7,61 +7,168 @@
  */
 package ir_course;
 
-import com.google.common.base.Joiner;
-
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.core.SimpleAnalyzer;
 import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInvertState;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
-import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.similarities.BM25Similarity;
 import org.apache.lucene.search.similarities.DefaultSimilarity;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
-import org.tartarus.snowball.ext.PorterStemmer;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.StringTokenizer;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class LuceneSearchApp {
 
     public static final String INDEXFILE = "index";
     public static final String TITLE = "title";
     public static final String RELEVANT = "relevant";
-    public static final PorterStemmer PORTER_STEMMER = new PorterStemmer();
-    private static final String ABSTRACT = "abstract";
-    private static Stemmer stemmer;
-    private static Plotter plotter;
-
-    private static int totalNumRelevantRecords = 0;
-    private static Similarity similarity;
-    private static Analyzer analyzer;
+    public static final String ID = "id";
+    public static final String HASH = "hash";
+    // judgment of every document for its search task, "task:1" (relevant) or "task:0"
+    public static final String QRELS = "qrels";
+    // query of the search task every document was collected for, "task:query"
+    public static final String QUERY = "query";
+    // position of every document in the corpus, as doc values, only in sharded indexes
+    public static final String ORDER = "order";
+    static final String ABSTRACT = "abstract";
+    public static final String STREAM = "stream";
+    public static final String THREADS = "threads";
+    private static final int STREAM_QUEUE_SIZE = 256;
+    public static final String REINDEX = "reindex";
+    public static final String INCREMENTAL = "incremental";
+    public static final String SEARCH_THREADS = "searchThreads";
+    public static final String QUERY_THREADS = "queryThreads";
+    public static final String EXHAUSTIVE = "exhaustive";
+    public static final String TOP_K = "topK";
+    public static final String METRICS = "metrics";
+    public static final String INTERPOLATED = "interpolated";
+    public static final String INDEX_ROOT = "indexRoot";
+    public static final String QUERY_CACHE = "queryCache";
+    public static final String STORAGE = "storage";
+    public static final String PARALLEL = "parallel";
+    public static final String RAM_BUFFER = "ramBufferMB";
+    public static final String MERGE_POLICY = "mergePolicy";
+    public static final String NRT = "nrt";
+    public static final String PREANALYZED = "preanalyzed";
+    public static final String SNAPSHOT = "snapshot";
+    public static final String COLUMNAR = "columnar";
+    public static final String QUERY_PLANS = "queryPlans";
+    public static final String REFRESH_MS = "refreshMs";
+    public static final String FAST_SCORING = "fastScoring";
+    public static final String QUERY_METRICS = "queryMetrics";
+    public static final String FIELDS = "fields";
+    public static final String TOPICS = "topics";
+    public static final String SHARDS = "shards";
+    public static final String ALL_TOPICS = "all";
+    // the search task of the course assignment, evaluated unless topics= is given
+    static final int DEFAULT_TOPIC = 4;
+    public static final String TITLE_BOOST = "titleBoost";
+    public static final String ABSTRACT_BOOST = "abstractBoost";
+    public static final String TIE_BREAKER = "tieBreaker";
+    // values of fields=: the topic terms are searched in the abstract only, as two
+    // independent clauses per term in title and abstract, or as one DisjunctionMaxQuery per term
+    public static final String FIELDS_ABSTRACT = "abstract";
+    public static final String FIELDS_BOTH = "both";
+    public static final String FIELDS_DISMAX = "dismax";
+    // default number of ranked documents collected per query
+    static final int TOP_N = 3000;
+    // norms of documents up to this length are compared to decide whether two similarities can share an index
+    private static final int NORMS_CHECK_LENGTH = 1 << 16;
+
+    private File indexDir = new File(INDEXFILE);
+    // analyzed tokens of the corpus, shared by all indexes built with the same analyzer
+    private File tokenFile;
+    // directory of the corpus snapshots, shared by all indexes
+    private File indexRoot;
+    private StorageMode storage = StorageMode.FS;
+    // opened on first use; a RAM index is kept for the lifetime of the instance
+    private Directory directory;
+    // number of hash partitions of the index, 1 for an unsharded index
+    private int shards;
+    // one directory per shard below indexDir, null unless sharded
+    private Directory[] shardDirectories;
+    private Stemmer stemmer;
+    private Plotter plotter;
+
+    private int totalNumRelevantRecords = 0;
+    // search task whose judgments evaluate the results of search()
+    private int topic = DEFAULT_TOPIC;
+    // judgments of the latest reader searched
+    private Judgments judgments;
+    private Similarity similarity;
+    // similarity the index is built with, differs from similarity only where the norms are identical
+    private Similarity indexSimilarity;
+    private Analyzer analyzer;
+    // queries of the configured analyzer, compiled plans of repeated searches are reused
+    private QueryCompiler compiler;
+    // indexing threads of stream and parallel
+    private int indexThreads;
+    // how often near-real-time searchers are reopened
+    private int refreshMillis;
+    // IndexWriter settings, null keeps the IndexWriterConfig defaults
+    private String ramBufferMB;
+    private String mergePolicy;
     
-    private static String mark;
-    private static String plotColor;
+    // rank every document (matching or not) instead of collecting only the top k matches
+    private boolean exhaustive;
+    private int topK = TOP_N;
+
+    private SearcherLifecycle searchers;
+    private ExecutorService searchExecutor;
+    // number of topic queries run at once through a QueryService, 0 runs them one by one
+    private int queryThreads;
+    // search while indexing: searchers come from this writer, which is never committed
+    private boolean nearRealTime;
+    private IndexWriter nrtWriter;
+    // ranked results of repeated queries, null unless queryCache=<entries> is given
+    private QueryResultCache queryCache;
+    // per-phase timings and counters of every search, null unless queryMetrics=<file> is given or set
+    private QueryMetrics queryMetrics;
+    private String fields;
+    private float titleBoost;
+    private float abstractBoost;
+    private float tieBreaker;
+
+    // the topic queries run by main, also used to warm new searchers
+    static final String[][] BENCHMARK_QUERIES = {
+            {"automatic", "face", "recognition"},
+            {"computer", "vision", "analysis"},
+            {"image", "pattern", "recognition"},
+            {"scene", "analysis"}
+    };
+    
+    private String mark;
+    private String plotColor;
     
     public LuceneSearchApp() {
 
@@ -71,132 +178,373 @@ public class LuceneSearchApp {
         if (args.length > 0) {
             LuceneSearchApp engine = new LuceneSearchApp();
 
-            DocumentCollectionParser parser = new DocumentCollectionParser();
-            parser.parse(args[0]);
-            List<DocumentInCollection> docs = parser.getDocuments();
-
             List<String> argList = Arrays.asList(args);
+            engine.configure(argList);
+            engine.ensureIndex(args[0], argList);
+            System.out.println(engine.runQueries(argList));
+        } else 
+            System.out.println("ERROR: the path of the corpus-file has to be passed as a command line argument.");
+    }
+
+    /* Sets up analyzer, similarity, plot style and index directory from the command line
+     * arguments. All run state lives in the instance, so differently configured instances
+     * can run side by side.
+     */
+    public void configure(List<String> argList) {
+        configure(argList, false);
+    }
 
+    /* As configure(argList); with sideBySide set, other instances may use the same index
+     * root at the same time (ExperimentRunner), so nrt is only accepted with storage=ram:
+     * a near-real-time writer holds the write lock of its directory until the queries ran.
+     */
+    public void configure(List<String> argList, boolean sideBySide) {
+        analyzer = new StandardAnalyzer(Version.LUCENE_42);
+        
+        stemmer = Stemmer.STANDARD;
+        plotColor = "blue";
+        // if analyzer defined
+        if (argList.contains("PORTER")) {
+            stemmer = Stemmer.PORTER;
+            plotColor = "red";
+            analyzer = new PorterAnalyzer();
+        } else if (argList.contains("SIMPLE")) {
+            stemmer = Stemmer.SIMPLE;
+            plotColor = "green";
+            analyzer = new SimpleAnalyzer(Version.LUCENE_42);
+        } else if (argList.contains("ENGLISH")) {
+            stemmer = Stemmer.ENGLISH;
+            plotColor = "pink";
+            analyzer = new EnglishAnalyzer(Version.LUCENE_42);
+        }
 
+        compiler = new QueryCompiler(analyzer, intArgument(argList, QUERY_PLANS, 1024));
+        exhaustive = argList.contains(EXHAUSTIVE);
+        topK = positiveIntArgument(argList, TOP_K, TOP_N);
+        int cacheEntries = intArgument(argList, QUERY_CACHE, 0);
+        queryCache = cacheEntries > 0 ? new QueryResultCache(cacheEntries) : null;
+        queryMetrics = stringArgument(argList, QUERY_METRICS, null) != null ? new HistogramMetrics() : null;
+        fields = stringArgument(argList, FIELDS, FIELDS_ABSTRACT);
+        if (!Arrays.asList(FIELDS_ABSTRACT, FIELDS_BOTH, FIELDS_DISMAX).contains(fields)) {
+            throw new IllegalArgumentException("Unknown fields mode " + fields);
+        }
+        titleBoost = floatArgument(argList, TITLE_BOOST, 1f);
+        abstractBoost = floatArgument(argList, ABSTRACT_BOOST, 1f);
+        tieBreaker = floatArgument(argList, TIE_BREAKER, 0.1f);
 
-            analyzer = new StandardAnalyzer(Version.LUCENE_42);
-            
-            stemmer = Stemmer.STANDARD;
-            plotColor = "blue";
-            // if analyzer defined
-            if (argList.contains("PORTER")) {
-                stemmer = Stemmer.PORTER;
-                plotColor = "red";
-                analyzer = new PorterAnalyzer();
-            } else if (argList.contains("SIMPLE")) {
-                stemmer = Stemmer.SIMPLE;
-                plotColor = "green";
-                analyzer = new SimpleAnalyzer(Version.LUCENE_42);
-            } else if (argList.contains("ENGLISH")) {
-                stemmer = Stemmer.ENGLISH;
-                plotColor = "pink";
-                analyzer = new EnglishAnalyzer(Version.LUCENE_42);
-            }
-
-
-            List<String> inTitle;
-            List<String> inAbstract;
-            List<String> results;
-
-            /* Queries found in corpus:
-             automatic face recognition, relevant documents: 50
-             computer vision analysis, relevant documents: 21
-             image pattern recognition, relevant documents: 37
-             scene analysis, relevant documents: 32
-             	sum total relevant documents = 140
-             */
-            
-            totalNumRelevantRecords = 140;
+        boolean fastScoring = argList.contains(FAST_SCORING);
+        if (argList.contains("bm25")) {
+            similarity = fastScoring ? new FastBM25Similarity() : new BM25Similarity();
+            mark = "*";
+        } else if (argList.contains("more-like-vsm")) {
+            similarity = fastScoring ? new FastVSMSimilarity() : new MoreLikeVSMSimilarity();
+            mark ="triangle";
+        } else {
+            similarity = new DefaultSimilarity();
+            mark = "square";
+        }
+
+        // one index per analyzer and norms encoding, reused as long as its manifest matches
+        indexSimilarity = indexSimilarity(similarity);
+        indexRoot = new File(stringArgument(argList, INDEX_ROOT, INDEXFILE));
+        indexDir = new File(indexRoot, stemmer.toString().toLowerCase() + "-" + indexSimilarity.getClass().getSimpleName());
+        shards = positiveIntArgument(argList, SHARDS, 1);
+        if (shards > 1) {
+            indexDir = new File(indexDir.getPath() + "-" + shards + "shards");
+        }
+        tokenFile = new File(indexRoot, stemmer.toString().toLowerCase() + ".tokens");
+        indexThreads = positiveIntArgument(argList, THREADS, Runtime.getRuntime().availableProcessors());
+        refreshMillis = positiveIntArgument(argList, REFRESH_MS, 50);
+        ramBufferMB = stringArgument(argList, RAM_BUFFER, null);
+        mergePolicy = stringArgument(argList, MERGE_POLICY, null);
+        if (shards > 1 && "tiered".equals(mergePolicy)) {
+            // merges non-adjacent segments, the shards would lose the corpus order the merge of their hits relies on
+            throw new IllegalArgumentException(SHARDS + " cannot keep the corpus order with " + MERGE_POLICY + "=tiered");
+        }
+        nearRealTime = argList.contains(NRT);
+        if (nearRealTime && shards > 1) {
+            throw new IllegalArgumentException(NRT + " cannot search a sharded index");
+        }
+        queryThreads = intArgument(argList, QUERY_THREADS, 0);
+        if (nearRealTime && queryThreads > 0) {
+            // a batch must be judged against the reader its queries searched
+            throw new IllegalArgumentException(QUERY_THREADS + " cannot search a near-real-time index");
+        }
+        storage = StorageMode.fromArgument(stringArgument(argList, STORAGE, StorageMode.FS.name()));
+        if (nearRealTime && sideBySide && storage.isPersistent()) {
+            throw new IllegalArgumentException(NRT + " needs " + STORAGE + "=ram when configurations run side by side");
+        }
+        plotter = new Plotter("/tmp/");
+    }
+
+    /* Runs the topic queries against the index and returns the averaged PR curve as a
+     * TikZ addplot command.
+     */
+    public String runQueries(List<String> argList) {
+        List<String> inTitle;
+        List<String> inAbstract;
+        List<String> results;
+
+        /* Queries found in corpus for the default topic 4:
+         automatic face recognition, relevant documents: 50
+         computer vision analysis, relevant documents: 21
+         image pattern recognition, relevant documents: 37
+         scene analysis, relevant documents: 32
+         	sum total relevant documents = 140
+         */
+        
+        plotter = new Plotter("/tmp/");
+        plotter.setInterpolated(argList.contains(INTERPOLATED));
+
+        openSearcher(intArgument(argList, SEARCH_THREADS, 0));
+        Judgments judgments = judgments();
+        List<Integer> topics = new ArrayList<>();
+        String topicsArgument = stringArgument(argList, TOPICS, String.valueOf(DEFAULT_TOPIC));
+        if (topicsArgument.equals(ALL_TOPICS)) {
+            topics.addAll(judgments.topics());
+        } else {
+            for (String number : topicsArgument.split(",")) {
+                topics.add(Integer.valueOf(number.trim()));
+            }
+        }
+        
+//        inAbstract = new ArrayList<>();
+//        inAbstract.add("recognising");
+//        inAbstract.add("faces");
+//        inAbstract.add("automatically");
+//        results = search(null, inAbstract, similarity);
+////        printResults(results);
+//        
+//        inAbstract = new ArrayList<>();
+//        inAbstract.add("recognizing");
+//        inAbstract.add("faces");
+//        inAbstract.add("automatically");
+//        results = search(null, inAbstract, similarity);
+////        printResults(results);
+        
+        // every query of every topic counts once in the averaged curve and metrics
+        Plotter allTopics = plotter;
+        QueryService service = queryThreads > 0 ? new QueryService(searchers, queryThreads) : null;
+        // latencies of the searched (not cached) queries of all batches and the summed batch times
+        long[] batchLatencies = new long[0];
+        long batchNanos = 0;
+        for (int number : topics) {
+            topic = number;
             plotter = new Plotter("/tmp/");
+            // recall denominator from the judgments, relevant documents that are not retrieved still count
+            totalNumRelevantRecords = countRelevant();
+            if (service != null) {
+                LatencyStats latency = searchTopicBatch(service, judgments.queries(number));
+                int searched = batchLatencies.length;
+                batchLatencies = Arrays.copyOf(batchLatencies, searched + latency.count());
+                System.arraycopy(latency.latencies(), 0, batchLatencies, searched, latency.count());
+                batchNanos += latency.wallNanos();
+            } else {
+                for (String query : judgments.queries(number)) {
+                    inAbstract = queryTerms(query);
+                    results = searchTopic(inAbstract);
+//                    printResults(results);
+                }
+            }
+            if (argList.contains(METRICS) && topics.size() > 1) {
+                System.err.println(String.format("%s %s topic %d (%d relevant): %s",
+                        stemmer, similarity, number, totalNumRelevantRecords, plotter.MetricsAsString()));
+            }
+            allTopics.AddResults(plotter);
+        }
+        plotter = allTopics;
+        topic = DEFAULT_TOPIC;
+        if (service != null) {
+            service.close();
+            System.err.println(String.format("%s %s queryThreads=%d searchThreads=%d: %s", stemmer, similarity,
+                    queryThreads, intArgument(argList, SEARCH_THREADS, 0), new LatencyStats(batchLatencies, batchNanos)));
+        }
+        closeSearcher();
+
+        if (argList.contains(METRICS)) {
+            System.err.println(String.format("%s %s: %s", stemmer, similarity, plotter.MetricsAsString()));
+            System.err.println(String.format("%s %s: %s", stemmer, similarity, compiler));
+            if (stemmer == Stemmer.PORTER) {
+                System.err.println(String.format("%s %s: %s", stemmer, similarity, StemmingService.PORTER));
+            }
+        }
+        if (queryCache != null) {
+            System.err.println(String.format("%s %s: %s", stemmer, similarity, queryCache));
+        }
+//        System.out.println(plotter.PlotResultsAsString(String.format("combined results, stemmer: %s scorer: %s", stemmer.toString(), similarity.toString())));
+        return plotter.PlotResultsAsStringAddPlotOnly(plotColor, mark);
+    }
+
+    public File getIndexDir() {
+        return indexDir;
+    }
+
+    public Similarity getSimilarity() {
+        return similarity;
+    }
+
+    public Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
 
-            if (argList.contains("bm25")) {
-                similarity = new BM25Similarity();
-                mark = "*";
-            } else if (argList.contains("more-like-vsm")) {
-                similarity = new MoreLikeVSMSimilarity();
-                mark ="triangle";
+    // records the timings and counters of the following searches in metrics, or nothing if null
+    public void setQueryMetrics(QueryMetrics metrics) {
+        queryMetrics = metrics;
+    }
+
+    public StorageMode getStorageMode() {
+        return storage;
+    }
+
+    // whether other instances with the same index directory can search this instance's index
+    public boolean isIndexShared() {
+        return storage.isPersistent() && !nearRealTime;
+    }
+
+    // the index directory in the configured storage mode
+    Directory directory() throws IOException {
+        if (directory == null) {
+            directory = storage.open(indexDir);
+        }
+        return directory;
+    }
+
+    // the shard directories in the configured storage mode
+    Directory[] shardDirectories() throws IOException {
+        if (shardDirectories == null) {
+            shardDirectories = new Directory[shards];
+            for (int i = 0; i < shards; i++) {
+                shardDirectories[i] = storage.open(new File(indexDir, "shard-" + i));
+            }
+        }
+        return shardDirectories;
+    }
+
+    /* DefaultSimilarity or MoreLikeVSMSimilarity if the given similarity writes exactly the
+     * same norms (BM25 and the fast scoring similarities do), so that they can search the
+     * same index; otherwise the similarity itself.
+     */
+    static Similarity indexSimilarity(Similarity similarity) {
+        for (Similarity candidate : new Similarity[]{new DefaultSimilarity(), new MoreLikeVSMSimilarity()}) {
+            if (similarity.getClass() == candidate.getClass() || sameNorms(similarity, candidate)) {
+                return candidate;
+            }
+        }
+        return similarity;
+    }
+
+    private static boolean sameNorms(Similarity similarity, Similarity other) {
+        for (int length = 0; length <= NORMS_CHECK_LENGTH; length++) {
+            FieldInvertState state = new FieldInvertState(ABSTRACT, length, length, 0, 0, 1f);
+            if (similarity.computeNorm(state) != other.computeNorm(state)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Builds the index for the current configuration unless indexDir already holds one
+     * whose manifest matches the corpus, analyzer, similarity and schema.
+     */
+    public void ensureIndex(String corpusPath, List<String> argList) {
+        try {
+            if (nearRealTime) {
+                indexNearRealTime(corpusPath, argList);
+                return;
+            }
+            if (!storage.isPersistent()) {
+                // nothing on disk to compare with, a RAM index is built once per instance
+                Directory existing = shards > 1 ? shardDirectories()[0] : directory();
+                if (argList.contains(REINDEX) || !DirectoryReader.indexExists(existing)) {
+                    buildIndex(corpusPath, argList);
+                    writeJudgments();
+                }
+                return;
+            }
+            IndexManifest manifest = IndexManifest.create(new File(corpusPath), analyzer, indexSimilarity);
+            if (!argList.contains(REINDEX) && manifest.matches(indexDir)) {
+                return;
+            }
+            boolean incremental = argList.contains(INCREMENTAL) && shards <= 1 && manifest.matchesConfiguration(indexDir);
+            IndexManifest.invalidate(indexDir);
+            // a corpus that fails to parse throws here, before the judgments and the manifest
+            // mark the index as complete
+            if (incremental) {
+                indexIncremental(corpusPath, indexSimilarity);
             } else {
-                similarity = new DefaultSimilarity();
-                mark = "square";
-            }
-
-
-            engine.index(docs, similarity);
-            
-//            inAbstract = new ArrayList<>();
-//            inAbstract.add("recognising");
-//            inAbstract.add("faces");
-//            inAbstract.add("automatically");
-//            results = engine.search(null, inAbstract, similarity);
-////            engine.printResults(results);
-//            
-//            inAbstract = new ArrayList<>();
-//            inAbstract.add("recognizing");
-//            inAbstract.add("faces");
-//            inAbstract.add("automatically");
-//            results = engine.search(null, inAbstract, similarity);
-////            engine.printResults(results);
-            
-            inAbstract = new ArrayList<>();
-            inAbstract.add("automatic");
-            inAbstract.add("face");
-            inAbstract.add("recognition");
-            results = engine.search(null, inAbstract, similarity);
-//            engine.printResults(results);
-
-            inAbstract = new ArrayList<>();
-            inAbstract.add("computer");
-            inAbstract.add("vision");
-            inAbstract.add("analysis");
-            results = engine.search(null, inAbstract, similarity);
-//            engine.printResults(results);
-
-            inAbstract = new ArrayList<>();
-            inAbstract.add("image");
-            inAbstract.add("pattern");
-            inAbstract.add("recognition");
-            results = engine.search(null, inAbstract, similarity);
-//            engine.printResults(results);
-
-            inAbstract = new ArrayList<>();
-            inAbstract.add("scene");
-            inAbstract.add("analysis");
-            results = engine.search(null, inAbstract, similarity);
-//            engine.printResults(results);
-
-              System.out.println(plotter.PlotResultsAsStringAddPlotOnly(plotColor, mark));
-//            System.out.println(plotter.PlotResultsAsString(String.format("combined results, stemmer: %s scorer: %s", stemmer.toString(), similarity.toString())));
-        } else 
-            System.out.println("ERROR: the path of the corpus-file has to be passed as a command line argument.");
+                buildIndex(corpusPath, argList);
+            }
+            writeJudgments();
+            manifest.write(indexDir);
+        } catch (IOException e) {
+            System.err.println("Error reading index manifest!");
+            throw new RuntimeException(e);
+        }
+    }
+
+    // collects the judgments of the index just built and writes them next to it
+    private void writeJudgments() throws IOException {
+        if (shards > 1) {
+            // no single index version to check them against, they are collected when searching
+            return;
+        }
+        try (DirectoryReader reader = DirectoryReader.open(directory())) {
+            Judgments.collect(reader).write(directory());
+        }
+    }
+
+    private void buildIndex(String corpusPath, List<String> argList) {
+        if (shards > 1) {
+            indexSharded(documents(corpusPath, argList), indexSimilarity);
+        } else if (argList.contains(STREAM)) {
+            indexStreaming(corpusPath, indexSimilarity, indexThreads);
+        } else {
+            List<DocumentInCollection> docs = documents(corpusPath, argList);
+            if (argList.contains(PARALLEL)) {
+                indexParallel(docs, indexSimilarity, indexThreads);
+            } else if (argList.contains(PREANALYZED)) {
+                indexPreAnalyzed(docs, corpusPath, indexSimilarity);
+            } else {
+                index(docs, indexSimilarity);
+            }
+        }
+    }
+
+    /* The parsed collection, read from its snapshot in indexRoot with the snapshot argument,
+     * and held in a ColumnarCorpus with the columnar argument.
+     */
+    private List<DocumentInCollection> documents(String corpusPath, List<String> argList) {
+        boolean columnar = argList.contains(COLUMNAR);
+        if (argList.contains(SNAPSHOT)) {
+            try {
+                List<DocumentInCollection> docs = CorpusSnapshot.documents(corpusPath,
+                        new File(indexRoot, new File(corpusPath).getName() + ".snapshot"));
+                return columnar ? ColumnarCorpus.copyOf(docs) : docs;
+            } catch (IOException e) {
+                System.err.println("Error reading corpus snapshot!");
+                throw new RuntimeException(e);
+            }
+        }
+        if (columnar) {
+            ColumnarCorpus.Builder builder = new ColumnarCorpus.Builder();
+            new DocumentCollectionParser(builder).parse(corpusPath);
+            return builder.build();
+        }
+        DocumentCollectionParser parser = new DocumentCollectionParser();
+        parser.parse(corpusPath);
+        return parser.getDocuments();
     }
 
     public void index(List<DocumentInCollection> docs, Similarity similarity) {
         try {
-            Directory dir = FSDirectory.open(new File(INDEXFILE));
-            
-            IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_42, analyzer);
-            iwc.setSimilarity(similarity);
-            
-            iwc.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
-            IndexWriter w = new IndexWriter(dir, iwc);
-
+            IndexWriter w = openWriter(similarity);
+            DocumentTemplate template = new DocumentTemplate();
             for (DocumentInCollection documentInCollection : docs) {
-                Document doc = new Document();
-                if(documentInCollection.isRelevant() && documentInCollection.getSearchTaskNumber() == 4) {
-                	doc.add(new Field(RELEVANT, "true", TextField.TYPE_STORED));
-                } else {
-                	doc.add(new Field(RELEVANT, "false", TextField.TYPE_STORED));
-                }
-                String title = documentInCollection.getTitle();
-                String abstractString = documentInCollection.getAbstractText();
-                doc.add(new Field(TITLE, documentInCollection.getTitle(), TextField.TYPE_STORED));
-                doc.add(new Field(ABSTRACT, abstractString, TextField.TYPE_STORED));
-                w.addDocument(doc);
+                w.addDocument(template.fill(documentInCollection));
             }
             w.close();
         } catch (IOException e) {
@@ -206,93 +554,573 @@ public class LuceneSearchApp {
 
     }
 
-    private String tokenizeAndPorterStemString(String abstractString) {
-        StringTokenizer tokenizer = new StringTokenizer(abstractString);
-        List<String> stemmedList = new LinkedList<>();
-        while (tokenizer.hasMoreTokens()) {
-            stemmedList.add(porterStem(tokenizer.nextToken().toLowerCase()));
+    /* Indexes from the analyzed tokens in tokenFile, analyzing the collection and writing
+     * the file first if it does not hold the tokens of this corpus and analyzer yet.
+     */
+    public void indexPreAnalyzed(List<DocumentInCollection> docs, String corpusPath, Similarity similarity) {
+        try {
+            String checksum = IndexManifest.corpusChecksum(new File(corpusPath));
+            PreAnalyzedCorpus tokens = PreAnalyzedCorpus.load(tokenFile, checksum, analyzer);
+            if (tokens == null) {
+                tokens = PreAnalyzedCorpus.analyze(docs, analyzer);
+                tokens.write(tokenFile, checksum, analyzer);
+            }
+            indexPreAnalyzed(docs, tokens, similarity);
+        } catch (IOException e) {
+            System.err.println("Error reading pre-analyzed tokens!");
+            throw new RuntimeException(e);
         }
-        Joiner joiner = Joiner.on(" ").skipNulls();
-        abstractString = joiner.join(stemmedList);
-        return abstractString;
     }
 
-    public List<String> search(List<String> inTitle, List<String> inAbstract, Similarity similarity) {
+    public void indexPreAnalyzed(List<DocumentInCollection> docs, PreAnalyzedCorpus tokens, Similarity similarity) {
+        try {
+            IndexWriter w = openWriter(similarity);
+            PreAnalyzedCorpus.Template template = tokens.template();
+            int position = 0;
+            for (DocumentInCollection doc : docs) {
+                w.addDocument(template.fill(position++, doc));
+            }
+            w.close();
+        } catch (IOException e) {
+            System.err.println("Error creating index!");
+            throw new RuntimeException(e);
+        }
+    }
 
-//        printQuery(inTitle, null, inAbstract, null);
+    /* Hash-partitions the parsed collection into the shard directories, one IndexWriter and
+     * indexing thread per shard. Prints the indexing rate.
+     */
+    public void indexSharded(List<DocumentInCollection> docs, Similarity similarity) {
+        try {
+            long start = System.nanoTime();
+            if (mergePolicy == null) {
+                // ShardedSearcher breaks ties by corpus order assuming the doc ids of every shard
+                // follow it; merging only adjacent segments keeps them in the order they were added
+                mergePolicy = "logdoc";
+            }
+            Directory[] dirs = shardDirectories();
+            IndexWriter[] writers = new IndexWriter[dirs.length];
+            for (int i = 0; i < dirs.length; i++) {
+                writers[i] = openWriter(dirs[i], similarity, IndexWriterConfig.OpenMode.CREATE);
+            }
+            new ShardedIndexer(writers).index(docs);
+            for (IndexWriter w : writers) {
+                w.close();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.println(String.format("Indexed %d documents into %d shards in %.3f s: %.1f docs/s",
+                    docs.size(), dirs.length, seconds, docs.size() / seconds));
+        } catch (IOException e) {
+            System.err.println("Error creating index!");
+            throw new RuntimeException(e);
+        }
+    }
 
-        IndexReader reader;
+    /* Indexes the parsed collection on several threads, each adding its own slice to the
+     * shared IndexWriter. Prints the indexing rate and the resulting number of segments.
+     */
+    public void indexParallel(List<DocumentInCollection> docs, Similarity similarity, int threads) {
         try {
-            reader = DirectoryReader.open(FSDirectory.open(new File(INDEXFILE)));
+            long start = System.nanoTime();
+            IndexWriter w = openWriter(similarity);
+            new ParallelIndexer(w, threads).index(docs);
+            w.close();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            int segments;
+            try (DirectoryReader reader = DirectoryReader.open(directory())) {
+                segments = reader.leaves().size();
+            }
+            System.err.println(String.format("Indexed %d documents on %d threads in %.3f s: %.1f docs/s, %d segments",
+                    docs.size(), threads, seconds, docs.size() / seconds, segments));
+        } catch (IOException e) {
+            System.err.println("Error creating index!");
+            throw new RuntimeException(e);
+        }
+    }
+
+    /* Indexes the corpus while it is being parsed. Parsed documents go through a bounded
+     * queue to several threads sharing one IndexWriter, so the collection is never held
+     * in memory as a whole.
+     */
+    public void indexStreaming(String uri, Similarity similarity, int threads) {
+        try {
+            IndexWriter w = openWriter(similarity);
+            IndexingPipeline pipeline = new IndexingPipeline(w, threads, STREAM_QUEUE_SIZE);
+            try {
+                new DocumentCollectionParser(pipeline).parse(uri);
+            } catch (RuntimeException e) {
+                // the documents parsed before the error are never committed
+                try {
+                    pipeline.finish();
+                } finally {
+                    w.rollback();
+                }
+                throw e;
+            }
+            pipeline.finish();
+            w.close();
+        } catch (IOException e) {
+            System.err.println("Error creating index!");
+            throw new RuntimeException(e);
+        }
+    }
+
+    /* Updates the existing index with only the items that were added, edited or removed
+     * in the corpus since it was built. Documents are matched by their ID field.
+     */
+    public void indexIncremental(String uri, Similarity similarity) {
+        try {
+            IndexWriter w = openWriter(similarity, IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+            IncrementalIndexer indexer = new IncrementalIndexer(w);
+            try {
+                new DocumentCollectionParser(indexer).parse(uri);
+            } catch (RuntimeException e) {
+                // keeps the index as it was before the update
+                w.rollback();
+                throw e;
+            }
+            indexer.finish();
+            w.close();
+            System.err.println("Incremental update of " + indexDir + ": " + indexer);
+        } catch (IOException e) {
+            System.err.println("Error updating index!");
+            throw new RuntimeException(e);
+        }
+    }
+
+    /* Indexes the corpus while it is parsed and opens the searchers from the writer, which
+     * refreshes them every refreshMs (default 50) milliseconds. Nothing is committed: the
+     * documents stay searchable until closeSearcher() rolls the writer back, and an index
+     * already on disk in indexDir is left as it was. Prints the visibility lag of the
+     * documents, from being parsed to being searchable.
+     */
+    private void indexNearRealTime(String corpusPath, List<String> argList) throws IOException {
+        if (mergePolicy == null) {
+            // refreshes flush small segments at varying points; merging only adjacent ones keeps
+            // the doc ids in corpus order, so equal scores rank as in an index built at once
+            mergePolicy = "logbyte";
+        }
+        nrtWriter = openWriter(indexSimilarity);
+        int searchThreads = intArgument(argList, SEARCH_THREADS, 0);
+        searchExecutor = searchThreads > 0 ? Executors.newFixedThreadPool(searchThreads) : null;
+        searchers = new SearcherLifecycle(nrtWriter, similarity, warmer(), searchExecutor);
+        NrtIndexer indexer = new NrtIndexer(nrtWriter, searchers, refreshMillis);
+        // the topic queries keep searching the refreshed searchers while documents are added
+        List<BooleanQuery> queries = new ArrayList<>();
+        for (String[] queryTerms : BENCHMARK_QUERIES) {
+            queries.add(topicQuery(Arrays.asList(queryTerms)));
+        }
+        QueryLoad load = new QueryLoad(searchers, queries, topK, refreshMillis);
+        try {
+            new DocumentCollectionParser(indexer).parse(corpusPath);
+        } finally {
+            LatencyStats latency = load.stop();
+            indexer.finish();
+            System.err.println("Near-real-time visibility lag of " + indexDir + ": " + indexer.visibilityLag());
+            System.err.println("Queries while indexing " + indexDir + ": " + load + ", " + latency);
+        }
+    }
+
+    /* Opens the searcher shared by all queries on indexDir. Each new reader is warmed
+     * with the benchmark queries before it is used. With searchThreads > 0 every query
+     * searches the index segments in parallel on a pool of that size.
+     */
+    public void openSearcher(int searchThreads) {
+        if (nrtWriter != null) {
+            // already searching the writer's documents
+            return;
+        }
+        try {
+            if (shards > 1) {
+                // the shards of every query are searched concurrently, by default one thread each
+                searchExecutor = Executors.newFixedThreadPool(searchThreads > 0 ? searchThreads : shards);
+                searchers = new SearcherLifecycle(shardDirectories(), similarity, warmer(), searchExecutor);
+                return;
+            }
+            searchExecutor = searchThreads > 0 ? Executors.newFixedThreadPool(searchThreads) : null;
+            searchers = new SearcherLifecycle(directory(), similarity, warmer(), searchExecutor);
         } catch (IOException e) {
             System.err.println("Error opening index for searching!");
             throw new RuntimeException(e);
         }
+    }
 
-        IndexSearcher searcher = new IndexSearcher(reader);
-        BooleanQuery query = new BooleanQuery();
-        addTermQueries(inTitle, query, TITLE, BooleanClause.Occur.SHOULD);
-        addTermQueries(inAbstract, query, ABSTRACT, BooleanClause.Occur.SHOULD);
-        query.add(new MatchAllDocsQuery(), BooleanClause.Occur.SHOULD);
-                
-        
-        return collectResults(searcher, query, similarity);
+    private SearcherLifecycle.Warmer warmer() {
+        return new SearcherLifecycle.Warmer() {
+            @Override
+            public void warm(IndexSearcher searcher) throws IOException {
+                if (similarity instanceof TableDrivenSimilarity) {
+                    ((TableDrivenSimilarity) similarity).precompute(searcher);
+                }
+                for (String[] queryTerms : BENCHMARK_QUERIES) {
+                    searcher.search(compiler.compile(null, Arrays.asList(queryTerms), exhaustive), 10);
+                }
+            }
+        };
+    }
+
+    public void closeSearcher() {
+        try {
+            searchers.close();
+            if (nrtWriter != null) {
+                // discards the uncommitted documents and closes the writer
+                nrtWriter.rollback();
+                nrtWriter = null;
+            }
+            if (storage.isPersistent()) {
+                if (directory != null) {
+                    directory.close();
+                    directory = null;
+                }
+                if (shardDirectories != null) {
+                    for (Directory shard : shardDirectories) {
+                        shard.close();
+                    }
+                    shardDirectories = null;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        searchers = null;
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
+            searchExecutor = null;
+        }
+    }
+
+    private IndexWriter openWriter(Similarity similarity) throws IOException {
+        return openWriter(similarity, IndexWriterConfig.OpenMode.CREATE);
+    }
+
+    private IndexWriter openWriter(Similarity similarity, IndexWriterConfig.OpenMode openMode) throws IOException {
+        return openWriter(directory(), similarity, openMode);
+    }
+
+    private IndexWriter openWriter(Directory dir, Similarity similarity, IndexWriterConfig.OpenMode openMode) throws IOException {
+        IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_42, analyzer);
+        iwc.setSimilarity(similarity);
+        if (ramBufferMB != null) {
+            iwc.setRAMBufferSizeMB(Double.parseDouble(ramBufferMB));
+        }
+        if (mergePolicy != null) {
+            iwc.setMergePolicy(mergePolicy(mergePolicy));
+        }
+
+        iwc.setOpenMode(openMode);
+        return new IndexWriter(dir, iwc);
+    }
+
+    // a new document; loops adding many documents should reuse a DocumentTemplate instead
+    static Document createDocument(DocumentInCollection documentInCollection) {
+        return new DocumentTemplate().fill(documentInCollection);
+    }
+
+    // "tiered" (the IndexWriterConfig default), "logbyte", "logdoc" or "none"
+    static MergePolicy mergePolicy(String name) {
+        switch (name) {
+            case "tiered":
+                return new TieredMergePolicy();
+            case "logbyte":
+                return new LogByteSizeMergePolicy();
+            case "logdoc":
+                return new LogDocMergePolicy();
+            case "none":
+                return NoMergePolicy.COMPOUND_FILES;
+            default:
+                throw new IllegalArgumentException("Unknown merge policy: " + name);
+        }
+    }
+
+    // value of a "name=value" command line argument
+    static int intArgument(List<String> argList, String name, int defaultValue) {
+        return Integer.parseInt(stringArgument(argList, name, String.valueOf(defaultValue)));
+    }
+
+    // as intArgument, but rejects values below 1
+    static int positiveIntArgument(List<String> argList, String name, int defaultValue) {
+        int value = intArgument(argList, name, defaultValue);
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be at least 1, not " + value);
+        }
+        return value;
+    }
+
+    static float floatArgument(List<String> argList, String name, float defaultValue) {
+        return Float.parseFloat(stringArgument(argList, name, String.valueOf(defaultValue)));
+    }
+
+    static String stringArgument(List<String> argList, String name, String defaultValue) {
+        for (String arg : argList) {
+            if (arg.startsWith(name + "=")) {
+                return arg.substring(name.length() + 1);
+            }
+        }
+        return defaultValue;
+    }
+
+    // the topic terms searched in the fields of the configured fields mode
+    public List<String> searchTopic(List<String> terms) {
+        switch (fields) {
+            case FIELDS_BOTH:
+                return search(terms, terms, similarity);
+            case FIELDS_DISMAX:
+                return searchMultiField(terms, similarity);
+            default:
+                return search(null, terms, similarity);
+        }
+    }
+
+    public List<String> search(List<String> inTitle, List<String> inAbstract, Similarity similarity) {
+        return search(inTitle, inAbstract, false, similarity);
     }
 
+    /* Every term is matched in title and abstract by one DisjunctionMaxQuery with the
+     * configured field boosts and tie breaker.
+     */
+    public List<String> searchMultiField(List<String> terms, Similarity similarity) {
+        return search(terms, terms, true, similarity);
+    }
+
+    private List<String> search(List<String> inTitle, List<String> inAbstract, boolean multiField, Similarity similarity) {
+
+//        printQuery(inTitle, null, inAbstract, null);
 
-    private List<String> collectResults(IndexSearcher searcher, BooleanQuery query, Similarity similarity) {
-        List<String> results = new LinkedList<>();
-        TopScoreDocCollector collector = TopScoreDocCollector.create(3000, false);
+        // DefaultSimilarity is subclass of TFIDFSimilarity
+        if (similarity == null) {
+            similarity = new DefaultSimilarity();
+        }
+        QueryMetrics metrics = queryMetrics;
+        long start = System.nanoTime();
+        IndexSearcher searcher = searchers.acquire();
+        if (metrics != null) {
+            metrics.record(QueryMetrics.Phase.ACQUIRE, System.nanoTime() - start);
+        }
         try {
-            // DefaultSimilarity is subclass of TFIDFSimilarity
-            if (similarity == null) {
-                similarity = new DefaultSimilarity();
+            IndexReader reader = searcher.getIndexReader();
+            // analyzed once by the compiler, the compiled query is also the cache key
+            start = System.nanoTime();
+            BooleanQuery query = compile(inTitle, inAbstract, multiField);
+            if (metrics != null) {
+                metrics.record(QueryMetrics.Phase.PARSE, System.nanoTime() - start);
             }
-            searcher.setSimilarity(similarity);
-            searcher.search(query, collector);
-            ScoreDoc[] hits = collector.topDocs().scoreDocs;
-            LinkedList<Document> plotlist = new LinkedList<Document>(); 
-            for (ScoreDoc sdoc : hits) {
-                int docId = sdoc.doc;
-                Document d = searcher.doc(docId);
-                results.add(d.get(TITLE) );
-                plotlist.add(d);
+            QueryResultCache.Key key = null;
+            QueryResultCache.Hits hits = null;
+            if (queryCache != null) {
+                key = QueryResultCache.key(analyzer, similarity, topK, query);
+                hits = queryCache.get(reader, key);
+            }
+            if (hits == null) {
+                if (metrics != null) {
+                    metrics.count(QueryMetrics.Counter.POSTINGS, postings(reader, query));
+                }
+                hits = collectResults(searcher, query, similarity, metrics);
+                if (queryCache != null) {
+                    queryCache.put(reader, key, hits);
+                }
             }
             /* Run plotter
-             * Plotter takes lucene documents, so it must be called from here
-             * before the results are converted to List<String> and relevance data is lost.
+             * Relevance comes from the judgment bits of the index, no stored fields are loaded.
              * Plotter also needs to know what the total recall is for each query, as the results
              * don't include those relevant documents that the query missed.
-             */ 
+             */
+            start = System.nanoTime();
+            plotter.AddRankingToResults(hits.docs, judgments(reader).relevant(topic), totalNumRelevantRecords);
+            if (metrics != null) {
+                metrics.record(QueryMetrics.Phase.EVALUATE, System.nanoTime() - start);
+            }
 
-//            System.out.println(plotter.PlotListAsString(plotlist, String.format("stemmer: %s scorer: %s", stemmer.toString(), similarity.toString()), 140));
-            plotter.AddListToResults(plotlist, totalNumRelevantRecords);
-//            plotter.PlotListToFile(plotlist, "Test", totalNumRelevantRecords);
+            return new ResultTitles(searchers, searcher, hits.docs, metrics);
+        } catch (IOException e) {
+            System.err.println("Error collecting results!");
+            throw new RuntimeException(e);
+        } finally {
+            searchers.release(searcher);
+        }
+    }
 
+    /* Runs the queries of the current topic as one batch through service, several at a
+     * time on the shared searcher, and adds their rankings to the plot in the order of the
+     * queries, so the curve is the same as that of searching them one by one. Cached
+     * results are reused and only the other queries are searched. Returns the latencies
+     * and throughput of the searched queries.
+     */
+    private LatencyStats searchTopicBatch(QueryService service, List<String> queries) {
+        QueryMetrics metrics = queryMetrics;
+        // holds the reader open and current for the judgments and cache keys of the batch
+        IndexSearcher searcher = searchers.acquire();
+        try {
+            IndexReader reader = searcher.getIndexReader();
+            QueryResultCache.Key[] keys = new QueryResultCache.Key[queries.size()];
+            QueryResultCache.Hits[] hits = new QueryResultCache.Hits[queries.size()];
+            List<BooleanQuery> batch = new ArrayList<>();
+            List<Integer> searched = new ArrayList<>();
+            for (int i = 0; i < queries.size(); i++) {
+                long start = System.nanoTime();
+                BooleanQuery query = topicQuery(queryTerms(queries.get(i)));
+                if (metrics != null) {
+                    metrics.record(QueryMetrics.Phase.PARSE, System.nanoTime() - start);
+                }
+                if (queryCache != null) {
+                    keys[i] = QueryResultCache.key(analyzer, similarity, topK, query);
+                    hits[i] = queryCache.get(reader, keys[i]);
+                }
+                if (hits[i] == null) {
+                    if (metrics != null) {
+                        metrics.count(QueryMetrics.Counter.POSTINGS, postings(reader, query));
+                    }
+                    batch.add(query);
+                    searched.add(i);
+                }
+            }
+            QueryService.BatchResult result = service.run(batch, topK);
+            for (int j = 0; j < batch.size(); j++) {
+                int i = searched.get(j);
+                hits[i] = new QueryResultCache.Hits(result.topDocs[j].scoreDocs);
+                if (metrics != null) {
+                    metrics.record(QueryMetrics.Phase.SCORE, result.latencies[j]);
+                    metrics.count(QueryMetrics.Counter.HITS, result.topDocs[j].totalHits);
+                }
+                if (queryCache != null) {
+                    queryCache.put(reader, keys[i], hits[i]);
+                }
+            }
+            for (QueryResultCache.Hits ranking : hits) {
+                long start = System.nanoTime();
+                plotter.AddRankingToResults(ranking.docs, judgments(reader).relevant(topic), totalNumRelevantRecords);
+                if (metrics != null) {
+                    metrics.record(QueryMetrics.Phase.EVALUATE, System.nanoTime() - start);
+                }
+            }
+            return result.latency;
         } catch (IOException e) {
             System.err.println("Error collecting results!");
             throw new RuntimeException(e);
+        } finally {
+            searchers.release(searcher);
+        }
+    }
+
+    // the query of the topic terms in the fields of the configured fields mode
+    private BooleanQuery topicQuery(List<String> terms) {
+        return compile(fields.equals(FIELDS_ABSTRACT) ? null : terms, terms, fields.equals(FIELDS_DISMAX));
+    }
+
+    private BooleanQuery compile(List<String> inTitle, List<String> inAbstract, boolean multiField) {
+        return multiField
+                ? compiler.compileMultiField(inAbstract, titleBoost, abstractBoost, tieBreaker, exhaustive)
+                : compiler.compile(inTitle, inAbstract, exhaustive);
+    }
+
+    /* With exhaustive set, every document of the collection matches (and is ranked) through
+     * an extra MatchAllDocsQuery clause; otherwise only documents containing a query term
+     * are scored.
+     */
+    static BooleanQuery buildQuery(Analyzer analyzer, List<String> inTitle, List<String> inAbstract, boolean exhaustive) {
+        return new QueryCompiler(analyzer).compile(inTitle, inAbstract, exhaustive);
+    }
+
+    /* One DisjunctionMaxQuery per term over the term in title and in abstract, scored as the
+     * better field plus tieBreaker times the other one, instead of a clause per field that
+     * adds both. The coordination factor counts matched terms, not matched fields.
+     */
+    static BooleanQuery buildMultiFieldQuery(Analyzer analyzer, List<String> terms, float titleBoost, float abstractBoost,
+                                             float tieBreaker, boolean exhaustive) {
+        return new QueryCompiler(analyzer).compileMultiField(terms, titleBoost, abstractBoost, tieBreaker, exhaustive);
+    }
+
+    // number of relevant (live) documents of the current topic in the index
+    public int countRelevant() {
+        IndexSearcher searcher = searchers.acquire();
+        try {
+            return judgments(searcher.getIndexReader()).countRelevant(topic, searcher.getIndexReader());
+        } catch (IOException e) {
+            System.err.println("Error reading relevance judgments!");
+            throw new RuntimeException(e);
+        } finally {
+            searchers.release(searcher);
         }
-        return results;
     }
 
-    private void addTermQueries(List<String> termList, BooleanQuery q, String field, BooleanClause.Occur occur) {
-        if (termList == null) return;
-        QueryParser qparser = new QueryParser(Version.LUCENE_42, field, analyzer);
-        for (String termString : termList) {
-			try {
-	            q.add(qparser.parse(termString), occur);
-			} catch (ParseException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+    // judgments of the current index, the queries of every topic
+    public Judgments judgments() {
+        IndexSearcher searcher = searchers.acquire();
+        try {
+            return judgments(searcher.getIndexReader());
+        } catch (IOException e) {
+            System.err.println("Error reading relevance judgments!");
+            throw new RuntimeException(e);
+        } finally {
+            searchers.release(searcher);
         }
     }
 
-    private String porterStem(String string) {
-        PORTER_STEMMER.setCurrent(string);
-        PORTER_STEMMER.stem();
-        return PORTER_STEMMER.getCurrent();
+    // read from the index directory if they were written for this reader's version, otherwise collected
+    private Judgments judgments(IndexReader reader) throws IOException {
+        Judgments current = judgments;
+        if (current == null || !current.matches(reader)) {
+            current = shards > 1 ? Judgments.collect(reader) : Judgments.open(directory(), reader);
+            judgments = current;
+        }
+        return current;
+    }
+
+    // the words of a topic query, escaped so that they are searched as plain terms
+    static List<String> queryTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        for (String word : query.split("\\s+")) {
+            if (!word.isEmpty()) {
+                terms.add(QueryParser.escape(word));
+            }
+        }
+        return terms;
+    }
+
+
+    private QueryResultCache.Hits collectResults(IndexSearcher searcher, BooleanQuery query, Similarity similarity,
+                                                 QueryMetrics metrics) throws IOException {
+        long start = System.nanoTime();
+        if (searcher.getSimilarity() != similarity) {
+            // the shared searcher must not be modified, use a throwaway one on the same reader and executor
+            searcher = searcher instanceof ShardedSearcher
+                    ? new ShardedSearcher(searcher.getIndexReader(), searchExecutor)
+                    : new IndexSearcher(searcher.getIndexReader(), searchExecutor);
+            searcher.setSimilarity(similarity);
+        }
+        /* Not through a Collector: only the TopDocs searches split the index segments (or
+         * shards) over the searcher's executor and merge their top hits.
+         */
+        TopDocs topDocs = searcher.search(query, topK);
+        QueryResultCache.Hits hits = new QueryResultCache.Hits(topDocs.scoreDocs);
+        if (metrics != null) {
+            metrics.record(QueryMetrics.Phase.SCORE, System.nanoTime() - start);
+            metrics.count(QueryMetrics.Counter.HITS, topDocs.totalHits);
+        }
+        return hits;
+    }
+
+    /* Number of postings the scorers of query iterate over: the document frequency of
+     * every term clause (deleted documents included) and maxDoc for MatchAllDocsQuery.
+     * A disjunction visits all postings of all its clauses.
+     */
+    static long postings(IndexReader reader, Query query) throws IOException {
+        if (query instanceof BooleanQuery) {
+            long postings = 0;
+            for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+                postings += postings(reader, clause.getQuery());
+            }
+            return postings;
+        }
+        if (query instanceof MatchAllDocsQuery) {
+            return reader.maxDoc();
+        }
+        Set<Term> terms = new HashSet<>();
+        query.extractTerms(terms);
+        long postings = 0;
+        for (Term term : terms) {
+            postings += reader.docFreq(term);
+        }
+        return postings;
     }
 
     public void printQuery(List<String> inTitle, List<String> notInTitle, List<String> inAbstract, List<String> notInAbstract) {
@@ -0,0 +1,114 @@
+/*
+ * Near-real-time indexing: parsed documents become searchable without a commit
+ */
+package ir_course;
+
+import org.apache.lucene.index.IndexWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds every parsed document to the writer and refreshes the writer's searchers every
+ * refreshMillis on a background thread, so queries see new documents after a bounded
+ * delay while the corpus is still being parsed. Nothing is committed.
+ *
+ * The visibility lag of a document is the time from handle() (the parser has finished
+ * the document) until the end of the first refresh that started after it was added to
+ * the writer, i.e. the moment queries can find it.
+ */
+public class NrtIndexer implements DocumentHandler {
+
+    private final IndexWriter writer;
+    private final SearcherLifecycle searchers;
+    private final ScheduledExecutorService refresher;
+    private final DocumentTemplate template = new DocumentTemplate();
+    private final long start = System.nanoTime();
+
+    // parse times of the documents added so far, in the order they were added
+    private long[] parsed = new long[1024];
+    private int added;
+    // documents added before the last refresh started, all of them are searchable
+    private int visible;
+    private long[] lags = new long[1024];
+    private volatile Throwable failure;
+
+    public NrtIndexer(IndexWriter writer, SearcherLifecycle searchers, long refreshMillis) {
+        this.writer = writer;
+        this.searchers = searchers;
+        this.refresher = Executors.newSingleThreadScheduledExecutor();
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh();
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                }
+            }
+        }, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void handle(DocumentInCollection doc) {
+        if (failure != null) {
+            throw new RuntimeException("Refreshing near-real-time searcher failed", failure);
+        }
+        long parseTime = System.nanoTime();
+        try {
+            writer.addDocument(template.fill(doc));
+        } catch (IOException e) {
+            System.err.println("Error adding document!");
+            throw new RuntimeException(e);
+        }
+        synchronized (this) {
+            if (added == parsed.length) {
+                parsed = Arrays.copyOf(parsed, added * 2);
+            }
+            parsed[added++] = parseTime;
+        }
+    }
+
+    // stops the periodic refresh and makes every added document searchable
+    public void finish() {
+        refresher.shutdown();
+        try {
+            refresher.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            refresh();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (failure != null) {
+            throw new RuntimeException("Refreshing near-real-time searcher failed", failure);
+        }
+    }
+
+    // visibility lag of every document made searchable so far
+    public synchronized LatencyStats visibilityLag() {
+        return new LatencyStats(Arrays.copyOf(lags, visible), System.nanoTime() - start);
+    }
+
+    private void refresh() throws IOException {
+        int before;
+        synchronized (this) {
+            before = added;
+        }
+        searchers.refresh();
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (before > lags.length) {
+                lags = Arrays.copyOf(lags, Math.max(before, lags.length * 2));
+            }
+            for (int i = visible; i < before; i++) {
+                lags[i] = now - parsed[i];
+            }
+            visible = Math.max(visible, before);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Indexes an in-memory collection on several threads sharing one IndexWriter
+ */
+package ir_course;
+
+import org.apache.lucene.index.IndexWriter;
+
+import java.util.List;
+
+/**
+ * Splits the collection into one contiguous slice per thread. Every thread adds its slice
+ * to the shared IndexWriter through its own DocumentTemplate, and IndexWriter flushes the
+ * threads' buffers into separate segments. Doc ids therefore follow the slices only
+ * roughly, and ties between equal scores can break differently than with a
+ * single-threaded index.
+ */
+public class ParallelIndexer {
+
+    private final IndexWriter writer;
+    private final int threads;
+
+    public ParallelIndexer(IndexWriter writer, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Indexing needs at least one thread, not " + threads);
+        }
+        this.writer = writer;
+        this.threads = threads;
+    }
+
+    // returns once every document has been added to the writer
+    public void index(final List<DocumentInCollection> docs) {
+        final IndexingWorkers workers = new IndexingWorkers("indexer");
+        for (int i = 0; i < threads; i++) {
+            final List<DocumentInCollection> slice =
+                    docs.subList(docs.size() * i / threads, docs.size() * (i + 1) / threads);
+            workers.start(new IndexingWorkers.Task() {
+                @Override
+                public void run(DocumentTemplate template) throws Exception {
+                    for (DocumentInCollection doc : slice) {
+                        if (workers.failed()) return;
+                        writer.addDocument(template.fill(doc));
+                    }
+                }
+            });
+        }
+        workers.join();
+    }
+}
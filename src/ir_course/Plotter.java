@@ -7,32 +7,42 @@ package ir_course;
 
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import org.apache.lucene.document.*;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
 
 public class Plotter {
 	private String basedir ="";
 	
 	private float[] points;
 	private int count;
-
-	private static class Point {
-		public double x,y;
-		
-		public Point(double x, double y) {
-			this.x = x;
-			this.y = y;
-		}
-		
-	}
+	// precision curve of the latest ranking, see PrecisionRecall.elevenPoint
+	private double[] curve;
+	// sums and latest curve of the interpolated precision, see PrecisionRecall.interpolatedElevenPoint
+	private float[] interpolatedPoints;
+	private double[] interpolatedCurve;
+	// plot the interpolated instead of the uninterpolated curve
+	private boolean interpolated;
+	
+	private double averagePrecisionSum;
+	private double rPrecisionSum;
+	private double precisionAt10Sum;
+	private double ndcgAt10Sum;
 	
 
     public Plotter(String basedir) {
     	this.basedir = basedir;
     	this.count = 0;
-    	this.points = new float[11];
+    	this.points = new float[PrecisionRecall.LEVELS];
+    	this.curve = new double[PrecisionRecall.LEVELS];
+    	this.interpolatedPoints = new float[PrecisionRecall.LEVELS];
+    	this.interpolatedCurve = new double[PrecisionRecall.LEVELS];
+    }
+
+    /* with interpolated set, the plots show the interpolated 11-point precision */
+    public void setInterpolated(boolean interpolated) {
+    	this.interpolated = interpolated;
     }
 
     
@@ -59,9 +69,16 @@ public class Plotter {
     			+ "\n\tlegend pos=outer north east,]";
     	plotTex += "\n\\addplot[color=blue,mark=*,]"
     			+"\n\tcoordinates {";
-    	List<Point> curvepoints = countPR(docs, totalRecall);
-    	for(Point p : curvepoints) {
-    		plotTex += "("+p.x +","+p.y+") ";
+    	if(interpolated) {
+    		PrecisionRecall.interpolatedElevenPoint(rankingOf(docs), relevanceOf(docs), totalRecall, interpolatedCurve);
+    		for(int i=0 ; i<PrecisionRecall.LEVELS ; i++) {
+    			plotTex += "("+((double)i/10) +","+interpolatedCurve[i]+") ";
+    		}
+    	} else {
+    		int reached = PrecisionRecall.elevenPoint(rankingOf(docs), relevanceOf(docs), totalRecall, curve);
+    		for(int i=0 ; i<reached ; i++) {
+    			plotTex += "("+((double)i/10) +","+curve[i]+") ";
+    		}
     	}
     	plotTex += "};\n\\end{axis} \n\\end{tikzpicture}";
     	
@@ -78,7 +95,7 @@ public class Plotter {
     	plotTex += "\n\\addplot[color=blue,mark=*,]"
     			+"\n\tcoordinates {";
     	for(int i=0 ; i<11 ; i++) {
-    		plotTex += "("+((float)i/10)+","+(points[i]/count)+") ";
+    		plotTex += "("+((float)i/10)+","+meanPoint(i)+") ";
     	}
     	plotTex += "};\n\\end{axis} \n\\end{tikzpicture}";
     	
@@ -89,7 +106,7 @@ public class Plotter {
     	String plotTex = "\n\\addplot[color="+color+",mark="+mark+",]"
     			+"\n\tcoordinates {";
     	for(int i=0 ; i<11 ; i++) {
-    		plotTex += "("+((float)i/10)+","+(points[i]/count)+") ";
+    		plotTex += "("+((float)i/10)+","+meanPoint(i)+") ";
     	}
     	plotTex += "};\n";
     	
@@ -97,58 +114,75 @@ public class Plotter {
     }   
     
     public void AddListToResults(List<Document> docs, int totalRecall) {
-    	List<Point> curvepoints = countPR(docs, totalRecall);
-    	for(Point p : curvepoints) {
+    	AddRankingToResults(rankingOf(docs), relevanceOf(docs), totalRecall);
+    }
+    
+    /* ranking holds doc ids in rank order, relevant tells which of them are relevant */
+    public void AddRankingToResults(int[] ranking, Bits relevant, int totalRecall) {
+    	int reached = PrecisionRecall.elevenPoint(ranking, relevant, totalRecall, curve);
+    	for(int i=0 ; i<reached ; i++) {
     		//eg. point x = 0.3 => index 3 in table
-    		int i = (int)(p.x*10);
-    		this.points[i] += p.y;
-    		i++;
+    		this.points[i] += curve[i];
+    	}
+    	PrecisionRecall.interpolatedElevenPoint(ranking, relevant, totalRecall, interpolatedCurve);
+    	for(int i=0 ; i<PrecisionRecall.LEVELS ; i++) {
+    		this.interpolatedPoints[i] += interpolatedCurve[i];
     	}
+    	this.averagePrecisionSum += PrecisionRecall.averagePrecision(ranking, relevant, totalRecall);
+    	this.rPrecisionSum += PrecisionRecall.rPrecision(ranking, relevant, totalRecall);
+    	this.precisionAt10Sum += PrecisionRecall.precisionAt(10, ranking, relevant);
+    	this.ndcgAt10Sum += PrecisionRecall.ndcgAt(10, ranking, relevant, totalRecall);
     	this.count++;
-    	
     }
     
-    private List<Point> countPR(List<Document> docs, int totalRecall) {
-    	List<Point> curvepoints = new LinkedList<Point>();
-    	for(int i=0; i<11; i++) {
-    		curvepoints.add(new Point((double)i/10, 0.0));
-    	}
-    	
-    	int relevantTotal = 0;
-    	int[] relevantCount = new int[docs.size()];
-    	
-    	for(int i = 0; i< docs.size(); i++) {
-    		Document d = docs.get(i);
-    		if(d.get(LuceneSearchApp.RELEVANT).toString().equalsIgnoreCase("true")) {
-    			relevantTotal++;
-    			relevantCount[i] = relevantTotal;
-    		}
+    /* adds all rankings added to other, e.g. the queries of one more topic */
+    public void AddResults(Plotter other) {
+    	for(int i=0 ; i<points.length ; i++) {
+    		this.points[i] += other.points[i];
+    		this.interpolatedPoints[i] += other.interpolatedPoints[i];
     	}
-    	
-//    	System.out.println("totalrelevant: " +relevantTotal);
-    	
-    	Iterator<Point> pointIterator = curvepoints.iterator();
-    	Point nextPoint = pointIterator.next();
-    	
-    	nextPoint.y = 1.0;
-    	nextPoint = pointIterator.next();
-    	for(int i=1; i < relevantCount.length; i++) {
-    		if((double)relevantCount[i]/totalRecall >= nextPoint.x) {
-    			nextPoint.y = ((double)relevantCount[i]/(i+1));
-    			if(pointIterator.hasNext()) {
-    				nextPoint = pointIterator.next();
-    			}
-    		}
+    	this.averagePrecisionSum += other.averagePrecisionSum;
+    	this.rPrecisionSum += other.rPrecisionSum;
+    	this.precisionAt10Sum += other.precisionAt10Sum;
+    	this.ndcgAt10Sum += other.ndcgAt10Sum;
+    	this.count += other.count;
+    }
+    
+    /* mean of the single-value measures over all added rankings; 11-pt AP is the mean
+     * interpolated precision over the 11 recall levels */
+    public String MetricsAsString() {
+    	double interpolatedSum = 0.0;
+    	for(int i=0 ; i<PrecisionRecall.LEVELS ; i++) {
+    		interpolatedSum += interpolatedPoints[i];
     	}
-    	List<Point> extraPoints = new LinkedList<Point>();
-    	if(nextPoint.y==0.0) {
-    		extraPoints.add(nextPoint);
+    	return String.format("MAP=%.4f, R-precision=%.4f, P@10=%.4f, nDCG@10=%.4f, 11-pt AP=%.4f",
+    			averagePrecisionSum/count, rPrecisionSum/count, precisionAt10Sum/count, ndcgAt10Sum/count,
+    			interpolatedSum/(PrecisionRecall.LEVELS*count));
+    }
+    
+    /* mean precision of all added rankings at recall level i/10, of the plotted curve */
+    private float meanPoint(int i) {
+    	return interpolated ? interpolatedPoints[i]/count : points[i]/count;
+    }
+    
+    /* a list of documents is ranked in list order */
+    private static int[] rankingOf(List<Document> docs) {
+    	int[] ranking = new int[docs.size()];
+    	for(int i = 0; i < ranking.length; i++) {
+    		ranking[i] = i;
     	}
-    	while(pointIterator.hasNext()) {
-    		extraPoints.add(pointIterator.next());
+    	return ranking;
+    }
+    
+    private static Bits relevanceOf(List<Document> docs) {
+    	FixedBitSet relevant = new FixedBitSet(docs.size());
+    	int i = 0;
+    	for(Document d : docs) {
+    		if(d.get(LuceneSearchApp.RELEVANT).toString().equalsIgnoreCase("true")) {
+    			relevant.set(i);
+    		}
+    		i++;
     	}
-    	curvepoints.removeAll(extraPoints);
-    	
-    	return curvepoints;
+    	return relevant;
     }
 }
@@ -1,6 +1,7 @@
 package ir_course;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.core.LowerCaseTokenizer;
 import org.apache.lucene.analysis.en.PorterStemFilter;
@@ -13,9 +14,23 @@ import java.io.Reader;
  * Date: 3/31/14
  */
 public class PorterAnalyzer extends Analyzer {
+
+    private final StemmingService stemmer;
+
+    // stems through the shared StemmingService.PORTER cache
+    public PorterAnalyzer() {
+        this(StemmingService.PORTER);
+    }
+
+    // with a null stemmer every token goes through PorterStemFilter uncached
+    public PorterAnalyzer(StemmingService stemmer) {
+        this.stemmer = stemmer;
+    }
+
     @Override
     protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
         Tokenizer source = new LowerCaseTokenizer(Version.LUCENE_42, reader);
-        return new TokenStreamComponents(source, new PorterStemFilter(source));
+        TokenStream stemmed = stemmer == null ? new PorterStemFilter(source) : new CachingPorterStemFilter(source, stemmer);
+        return new TokenStreamComponents(source, stemmed);
     }
 }
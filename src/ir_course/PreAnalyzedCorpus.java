@@ -0,0 +1,252 @@
+/*
+ * Analyzed token streams of a corpus, kept so that indexing can skip the analyzer
+ */
+package ir_course;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every analyzed field of every document is stored as its number of tokens followed by a
+ * (term id, position increment) pair per token, all as vints, with one term dictionary
+ * for the whole corpus. The file starts with the corpus checksum and the analyzer class;
+ * load() ignores a file that was written for anything else.
+ *
+ * Replaying the tokens produces the same terms, positions and norms as running the
+ * analyzer again, so an index built from it is identical whatever the similarity.
+ */
+public class PreAnalyzedCorpus {
+
+    private static final int MAGIC = 0x49525443;
+    private static final int FORMAT = 1;
+    // analyzed fields in the order of DocumentTemplate, which keeps the field numbers
+    private static final String[] FIELDS = {LuceneSearchApp.RELEVANT, LuceneSearchApp.TITLE, LuceneSearchApp.ABSTRACT};
+
+    private final String[] terms;
+    private final String[] ids;
+    private final byte[] tokens;
+    // start of every analyzed field of every document in tokens
+    private final int[] starts;
+
+    private PreAnalyzedCorpus(String[] terms, String[] ids, byte[] tokens) {
+        this.terms = terms;
+        this.ids = ids;
+        this.tokens = tokens;
+        this.starts = new int[ids.length * FIELDS.length];
+        ByteArrayDataInput in = new ByteArrayDataInput(tokens);
+        for (int i = 0; i < ids.length; i++) {
+            for (int f = 0; f < FIELDS.length; f++) {
+                starts[i * FIELDS.length + f] = in.getPosition();
+                int count = in.readVInt();
+                for (int t = 0; t < count; t++) {
+                    in.readVInt();
+                    in.readVInt();
+                }
+            }
+        }
+    }
+
+    public static PreAnalyzedCorpus analyze(List<DocumentInCollection> docs, Analyzer analyzer) throws IOException {
+        Map<String, Integer> termIds = new HashMap<>();
+        List<String> terms = new ArrayList<>();
+        String[] ids = new String[docs.size()];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutput out = new OutputStreamDataOutput(bytes);
+        // term id and position increment of every token of the current field, grown as needed
+        int[] tokenTerms = new int[256];
+        int[] tokenIncrements = new int[256];
+        // docs is usually the parser's LinkedList, iterated instead of indexed
+        int i = 0;
+        for (DocumentInCollection doc : docs) {
+            ids[i++] = doc.getId();
+            String[] values = {DocumentTemplate.relevantValue(doc), doc.getTitle(), doc.getAbstractText()};
+            for (int f = 0; f < FIELDS.length; f++) {
+                int count = 0;
+                TokenStream ts = analyzer.tokenStream(FIELDS[f], new StringReader(values[f]));
+                CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+                PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
+                ts.reset();
+                while (ts.incrementToken()) {
+                    String term = termAtt.toString();
+                    Integer id = termIds.get(term);
+                    if (id == null) {
+                        id = terms.size();
+                        termIds.put(term, id);
+                        terms.add(term);
+                    }
+                    if (count == tokenTerms.length) {
+                        tokenTerms = Arrays.copyOf(tokenTerms, count * 2);
+                        tokenIncrements = Arrays.copyOf(tokenIncrements, count * 2);
+                    }
+                    tokenTerms[count] = id;
+                    tokenIncrements[count++] = posIncAtt.getPositionIncrement();
+                }
+                ts.end();
+                ts.close();
+                out.writeVInt(count);
+                for (int t = 0; t < count; t++) {
+                    out.writeVInt(tokenTerms[t]);
+                    out.writeVInt(tokenIncrements[t]);
+                }
+            }
+        }
+        return new PreAnalyzedCorpus(terms.toArray(new String[terms.size()]), ids, bytes.toByteArray());
+    }
+
+    // the tokens stored in file, or null if there is none for this corpus and analyzer
+    public static PreAnalyzedCorpus load(File file, String corpusChecksum, Analyzer analyzer) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        ByteArrayDataInput in = new ByteArrayDataInput(Files.readAllBytes(file.toPath()));
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT
+                || !in.readString().equals(corpusChecksum) || !in.readString().equals(analyzer.getClass().getName())) {
+            return null;
+        }
+        String[] terms = new String[in.readVInt()];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = in.readString();
+        }
+        String[] ids = new String[in.readVInt()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = in.readString();
+        }
+        byte[] tokens = new byte[in.readVInt()];
+        in.readBytes(tokens, 0, tokens.length);
+        return new PreAnalyzedCorpus(terms, ids, tokens);
+    }
+
+    /* Written to a temporary file first and moved into place, so concurrent builds with
+     * the same analyzer never see a partial file.
+     */
+    public void write(File file, String corpusChecksum, Analyzer analyzer) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try (OutputStreamDataOutput out = new OutputStreamDataOutput(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeString(corpusChecksum);
+            out.writeString(analyzer.getClass().getName());
+            out.writeVInt(terms.length);
+            for (String term : terms) {
+                out.writeString(term);
+            }
+            out.writeVInt(ids.length);
+            for (String id : ids) {
+                out.writeString(id);
+            }
+            out.writeVInt(tokens.length);
+            out.writeBytes(tokens, tokens.length);
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    // a reusable document for one indexing thread
+    public Template template() {
+        return new Template();
+    }
+
+    /**
+     * Like DocumentTemplate, but the analyzed fields are fed from the stored tokens and
+     * their text is added as separate stored-only fields.
+     */
+    public class Template {
+
+        private final Field id = new StringField(LuceneSearchApp.ID, "", Field.Store.YES);
+        private final Field hash = new StoredField(LuceneSearchApp.HASH, "");
+        private final Field qrels = new StringField(LuceneSearchApp.QRELS, "", Field.Store.NO);
+        private final Field query = new StringField(LuceneSearchApp.QUERY, "", Field.Store.NO);
+        private final Field[] stored = new Field[FIELDS.length];
+        private final ReplayTokenStream[] streams = new ReplayTokenStream[FIELDS.length];
+        private final Document document = new Document();
+
+        Template() {
+            document.add(id);
+            document.add(hash);
+            document.add(qrels);
+            document.add(query);
+            for (int f = 0; f < FIELDS.length; f++) {
+                stored[f] = new StoredField(FIELDS[f], "");
+                streams[f] = new ReplayTokenStream();
+                document.add(stored[f]);
+                document.add(new Field(FIELDS[f], streams[f], TextField.TYPE_NOT_STORED));
+            }
+        }
+
+        // the document of the i-th item, which must be the item the tokens were made from
+        public Document fill(int i, DocumentInCollection doc) {
+            if (!ids[i].equals(doc.getId())) {
+                throw new IllegalStateException("Pre-analyzed document " + i + " is " + ids[i] + ", not " + doc.getId());
+            }
+            id.setStringValue(doc.getId());
+            hash.setStringValue(DocumentKeys.contentHash(doc));
+            qrels.setStringValue(DocumentTemplate.qrelsValue(doc));
+            query.setStringValue(DocumentTemplate.queryValue(doc));
+            stored[0].setStringValue(DocumentTemplate.relevantValue(doc));
+            stored[1].setStringValue(doc.getTitle());
+            stored[2].setStringValue(doc.getAbstractText());
+            for (int f = 0; f < FIELDS.length; f++) {
+                streams[f].start = starts[i * FIELDS.length + f];
+            }
+            return document;
+        }
+    }
+
+    private class ReplayTokenStream extends TokenStream {
+
+        private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+        private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+        private final ByteArrayDataInput in = new ByteArrayDataInput();
+        // position of the field's token count in tokens
+        int start;
+        private int remaining;
+
+        @Override
+        public void reset() {
+            in.reset(tokens, start, tokens.length - start);
+            remaining = in.readVInt();
+        }
+
+        @Override
+        public boolean incrementToken() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            clearAttributes();
+            termAtt.setEmpty().append(terms[in.readVInt()]);
+            posIncAtt.setPositionIncrement(in.readVInt());
+            return true;
+        }
+    }
+}
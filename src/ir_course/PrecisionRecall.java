@@ -0,0 +1,112 @@
+/*
+ * Evaluation measures for a ranking against binary relevance judgments
+ */
+package ir_course;
+
+import org.apache.lucene.util.Bits;
+
+/**
+ * All measures take the ranking as doc ids in rank order, the relevance of every doc id as
+ * Bits and the total number of relevant documents in the collection, so relevant documents
+ * missing from the ranking count against recall. Nothing is allocated; the 11-point
+ * methods write into an array supplied by the caller.
+ */
+public final class PrecisionRecall {
+
+    public static final int LEVELS = 11;
+
+    private PrecisionRecall() {
+    }
+
+    /* Precision at the first rank where recall reaches 0.0, 0.1, ..., 1.0, the definition
+     * the Plotter curves have always used. Point 0.0 is 1.0 by definition and the first
+     * ranked document is only counted towards the later ranks, as in the original plotter,
+     * so curves stay comparable with earlier runs. Levels that are never reached are 0.
+     * Returns the number of levels reached.
+     */
+    public static int elevenPoint(int[] ranking, Bits relevant, int totalRelevant, double[] precision) {
+        for (int i = 1; i < LEVELS; i++) {
+            precision[i] = 0.0;
+        }
+        precision[0] = 1.0;
+        int level = 1;
+        int relevantSoFar = 0;
+        for (int i = 0; i < ranking.length; i++) {
+            if (!relevant.get(ranking[i])) continue;
+            relevantSoFar++;
+            if (i > 0 && (double) relevantSoFar / totalRelevant >= (double) level / 10) {
+                precision[level] = (double) relevantSoFar / (i + 1);
+                if (level < LEVELS - 1) level++;
+            }
+        }
+        return precision[level] == 0.0 ? level : level + 1;
+    }
+
+    /* Standard interpolated 11-point precision: the maximum precision at any rank whose
+     * recall is at least the level. Levels that are never reached are 0.
+     */
+    public static void interpolatedElevenPoint(int[] ranking, Bits relevant, int totalRelevant, double[] precision) {
+        for (int i = 0; i < LEVELS; i++) {
+            precision[i] = 0.0;
+        }
+        int relevantSoFar = 0;
+        for (int i = 0; i < ranking.length; i++) {
+            if (!relevant.get(ranking[i])) continue;
+            relevantSoFar++;
+            double p = (double) relevantSoFar / (i + 1);
+            // every level up to the current recall is reachable from this rank
+            int reached = Math.min(LEVELS - 1, (int) Math.floor(10.0 * relevantSoFar / totalRelevant + 1e-9));
+            for (int level = 0; level <= reached; level++) {
+                if (p > precision[level]) precision[level] = p;
+            }
+        }
+    }
+
+    public static double averagePrecision(int[] ranking, Bits relevant, int totalRelevant) {
+        if (totalRelevant == 0) return 0.0;
+        double sum = 0.0;
+        int relevantSoFar = 0;
+        for (int i = 0; i < ranking.length; i++) {
+            if (relevant.get(ranking[i])) {
+                relevantSoFar++;
+                sum += (double) relevantSoFar / (i + 1);
+            }
+        }
+        return sum / totalRelevant;
+    }
+
+    // P@k, a ranking shorter than k counts the missing ranks as non-relevant
+    public static double precisionAt(int k, int[] ranking, Bits relevant) {
+        if (k <= 0) return 0.0;
+        int n = Math.min(k, ranking.length);
+        int relevantSoFar = 0;
+        for (int i = 0; i < n; i++) {
+            if (relevant.get(ranking[i])) relevantSoFar++;
+        }
+        return (double) relevantSoFar / k;
+    }
+
+    public static double rPrecision(int[] ranking, Bits relevant, int totalRelevant) {
+        return precisionAt(totalRelevant, ranking, relevant);
+    }
+
+    // nDCG@k with binary gains
+    public static double ndcgAt(int k, int[] ranking, Bits relevant, int totalRelevant) {
+        double dcg = 0.0;
+        int n = Math.min(k, ranking.length);
+        for (int i = 0; i < n; i++) {
+            if (relevant.get(ranking[i])) dcg += discount(i);
+        }
+        double ideal = 0.0;
+        int idealHits = Math.min(k, totalRelevant);
+        for (int i = 0; i < idealHits; i++) {
+            ideal += discount(i);
+        }
+        return ideal == 0.0 ? 0.0 : dcg / ideal;
+    }
+
+    // 1 / log2(rank + 1) for the 0-based rank i
+    private static double discount(int i) {
+        return Math.log(2) / Math.log(i + 2);
+    }
+}
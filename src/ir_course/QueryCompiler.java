@@ -0,0 +1,220 @@
+/*
+ * Turns topic terms into Lucene queries without the query parser
+ */
+package ir_course;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the analyzer once over every term of a query and builds the TermQuerys directly,
+ * the same query QueryParser builds for a single (escaped) word: a TermQuery for one
+ * token, a BooleanQuery of SHOULD TermQuerys for several (coordination disabled if they
+ * share one position, like synonyms), and an empty BooleanQuery for none (a stop word),
+ * which still counts for the coordination factor. Backslash escapes are removed before
+ * the analysis; no other query syntax is interpreted, terms are plain words.
+ *
+ * Compiled queries are kept as plans in an LRU cache of maxPlans entries, keyed by the
+ * terms per field and everything else that shapes the query, and returned again for a
+ * repeated search. A plan is never modified after it has been compiled, so it can be
+ * searched by several threads at once. The cache is synchronized.
+ */
+public class QueryCompiler {
+
+    private final Analyzer analyzer;
+    private final Map<String, BooleanQuery> plans;
+
+    private long hits;
+    private long misses;
+
+    // a compiler without plan cache
+    public QueryCompiler(Analyzer analyzer) {
+        this(analyzer, 0);
+    }
+
+    public QueryCompiler(Analyzer analyzer, final int maxPlans) {
+        this.analyzer = analyzer;
+        this.plans = maxPlans <= 0 ? null : new LinkedHashMap<String, BooleanQuery>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BooleanQuery> eldest) {
+                return size() > maxPlans;
+            }
+        };
+    }
+
+    /* A SHOULD clause per term in the title and in the abstract, a null term list adds
+     * none; with exhaustive set, a MatchAllDocsQuery clause makes every document match.
+     */
+    public BooleanQuery compile(List<String> inTitle, List<String> inAbstract, boolean exhaustive) {
+        String key = plans == null ? null : key(exhaustive, "title", inTitle) + key(false, "abstract", inAbstract);
+        BooleanQuery plan = cached(key);
+        if (plan != null) {
+            return plan;
+        }
+        plan = new BooleanQuery();
+        addTermQueries(plan, LuceneSearchApp.TITLE, inTitle);
+        addTermQueries(plan, LuceneSearchApp.ABSTRACT, inAbstract);
+        if (exhaustive) {
+            plan.add(new MatchAllDocsQuery(), BooleanClause.Occur.SHOULD);
+        }
+        return cache(key, plan);
+    }
+
+    // one DisjunctionMaxQuery per term over the boosted title and abstract queries of the term
+    public BooleanQuery compileMultiField(List<String> terms, float titleBoost, float abstractBoost,
+                                          float tieBreaker, boolean exhaustive) {
+        String key = plans == null ? null : key(exhaustive, "dismax " + titleBoost + " " + abstractBoost + " " + tieBreaker, terms);
+        BooleanQuery plan = cached(key);
+        if (plan != null) {
+            return plan;
+        }
+        plan = new BooleanQuery();
+        for (String term : terms) {
+            List<String> tokens = new ArrayList<>();
+            List<Integer> increments = new ArrayList<>();
+            analyze(LuceneSearchApp.TITLE, term, tokens, increments);
+            Query title = termQuery(LuceneSearchApp.TITLE, tokens, increments);
+            title.setBoost(titleBoost);
+            tokens.clear();
+            increments.clear();
+            analyze(LuceneSearchApp.ABSTRACT, term, tokens, increments);
+            Query inAbstract = termQuery(LuceneSearchApp.ABSTRACT, tokens, increments);
+            inAbstract.setBoost(abstractBoost);
+            DisjunctionMaxQuery either = new DisjunctionMaxQuery(tieBreaker);
+            either.add(title);
+            either.add(inAbstract);
+            plan.add(either, BooleanClause.Occur.SHOULD);
+        }
+        if (exhaustive) {
+            plan.add(new MatchAllDocsQuery(), BooleanClause.Occur.SHOULD);
+        }
+        return cache(key, plan);
+    }
+
+    // searches whose plan was cached
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized String toString() {
+        return String.format("query plans: %d hits, %d misses, %d cached", hits, misses, plans == null ? 0 : plans.size());
+    }
+
+    private void addTermQueries(BooleanQuery query, String field, List<String> terms) {
+        if (terms == null) {
+            return;
+        }
+        List<String> tokens = new ArrayList<>();
+        List<Integer> increments = new ArrayList<>();
+        for (String term : terms) {
+            tokens.clear();
+            increments.clear();
+            analyze(field, term, tokens, increments);
+            query.add(termQuery(field, tokens, increments), BooleanClause.Occur.SHOULD);
+        }
+    }
+
+    // what QueryParser makes of the tokens of one unquoted word
+    private static Query termQuery(String field, List<String> tokens, List<Integer> increments) {
+        if (tokens.size() == 1) {
+            return new TermQuery(new Term(field, tokens.get(0)));
+        }
+        int positions = 0;
+        for (int increment : increments) {
+            if (increment > 0) {
+                positions++;
+            }
+        }
+        BooleanQuery query = new BooleanQuery(positions == 1);
+        for (String token : tokens) {
+            query.add(new TermQuery(new Term(field, token)), BooleanClause.Occur.SHOULD);
+        }
+        return query;
+    }
+
+    private void analyze(String field, String term, List<String> tokens, List<Integer> increments) {
+        try {
+            TokenStream ts = analyzer.tokenStream(field, new StringReader(unescape(term)));
+            CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+            PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                tokens.add(termAtt.toString());
+                increments.add(posIncAtt.getPositionIncrement());
+            }
+            ts.end();
+            ts.close();
+        } catch (IOException e) {
+            System.err.println("Error analyzing query term " + term + "!");
+            throw new RuntimeException(e);
+        }
+    }
+
+    // the word without the backslashes of QueryParser.escape
+    private static String unescape(String term) {
+        if (term.indexOf('\\') < 0) {
+            return term;
+        }
+        StringBuilder word = new StringBuilder(term.length());
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c == '\\' && i + 1 < term.length()) {
+                c = term.charAt(++i);
+            }
+            word.append(c);
+        }
+        return word.toString();
+    }
+
+    // terms are separated by NUL, which no word contains
+    private static String key(boolean exhaustive, String field, List<String> terms) {
+        StringBuilder key = new StringBuilder(exhaustive ? "all|" : "|").append(field);
+        if (terms == null) {
+            return key.append('|').toString();
+        }
+        for (String term : terms) {
+            key.append('\0').append(term);
+        }
+        return key.append('|').toString();
+    }
+
+    private synchronized BooleanQuery cached(String key) {
+        if (key == null) {
+            return null;
+        }
+        BooleanQuery plan = plans.get(key);
+        if (plan != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return plan;
+    }
+
+    private synchronized BooleanQuery cache(String key, BooleanQuery plan) {
+        if (key != null) {
+            plans.put(key, plan);
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Topic queries searched in the background while an index is still being built
+ */
+package ir_course;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every intervalMillis, searches all queries once on the current searcher of the
+ * SearcherLifecycle, so that near-real-time refreshes happen under query load and the
+ * queries see the index grow. Records the latency of every query (acquire to top hits)
+ * and how many documents the searchers held.
+ */
+public class QueryLoad {
+
+    private final SearcherLifecycle searchers;
+    private final List<? extends Query> queries;
+    private final int n;
+    private final ScheduledExecutorService scheduler;
+    private final long start = System.nanoTime();
+
+    private long[] latencies = new long[1024];
+    private int count;
+    private int firstNumDocs = -1;
+    private int lastNumDocs;
+    private volatile Throwable failure;
+
+    public QueryLoad(SearcherLifecycle searchers, List<? extends Query> queries, int n, long intervalMillis) {
+        this.searchers = searchers;
+        this.queries = queries;
+        this.n = n;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    searchAll();
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                }
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // stops searching once the current round is done and returns the query latencies
+    public LatencyStats stop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (failure != null) {
+            throw new RuntimeException("Searching while indexing failed", failure);
+        }
+        return new LatencyStats(Arrays.copyOf(latencies, count), System.nanoTime() - start);
+    }
+
+    // documents held by the first and the last searcher queried
+    public String toString() {
+        return String.format("%d queries on %d to %d documents", count, Math.max(firstNumDocs, 0), lastNumDocs);
+    }
+
+    private void searchAll() throws IOException {
+        for (Query query : queries) {
+            long queryStart = System.nanoTime();
+            IndexSearcher searcher = searchers.acquire();
+            try {
+                searcher.search(query, n);
+                if (firstNumDocs < 0) {
+                    firstNumDocs = searcher.getIndexReader().numDocs();
+                }
+                lastNumDocs = searcher.getIndexReader().numDocs();
+            } finally {
+                searchers.release(searcher);
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - queryStart;
+        }
+    }
+}
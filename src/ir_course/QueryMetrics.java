@@ -0,0 +1,39 @@
+/*
+ * Per-query timings and counters recorded by LuceneSearchApp.search
+ */
+package ir_course;
+
+/**
+ * Receives one value per phase and counter for every query that runs the phase; queries
+ * answered from the query cache are not parsed or scored. Implementations must be thread
+ * safe, since searches of several threads can report to the same instance, and cheap, since
+ * they are called on the query path.
+ */
+public interface QueryMetrics {
+
+    enum Phase {
+        // analyzing the query terms into a BooleanQuery
+        PARSE,
+        // acquiring the shared searcher
+        ACQUIRE,
+        // scoring and collecting the top hits
+        SCORE,
+        // reading the stored title of one result
+        LOAD,
+        // adding the ranking to the precision/recall evaluation
+        EVALUATE
+    }
+
+    enum Counter {
+        // documents matching the query
+        HITS,
+        // postings of the query terms, i.e. the entries the scorers iterate over
+        POSTINGS,
+        // results whose stored fields were read
+        DOCS_LOADED
+    }
+
+    void record(Phase phase, long nanos);
+
+    void count(Counter counter, long value);
+}
@@ -0,0 +1,147 @@
+/*
+ * LRU cache of ranked results, valid for one index reader at a time
+ */
+package ir_course;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.similarities.Similarity;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keys are built from the compiled query, i.e. the analyzed query terms per field, plus
+ * everything else that changes the ranking (analyzer, similarity, number of hits), so
+ * two spellings that analyze to the same terms share an entry. The query is compared with
+ * Query.equals, which also covers what its string form leaves out, such as
+ * BooleanQuery.isCoordDisabled(); a keyed query must not be changed afterwards. Values hold only doc ids
+ * and scores. Doc ids are only meaningful for the reader they were computed on, so the
+ * whole cache is cleared whenever a lookup comes from a different (reopened) reader.
+ */
+public class QueryResultCache {
+
+    public static class Hits {
+        public final int[] docs;
+        public final float[] scores;
+
+        Hits(ScoreDoc[] scoreDocs) {
+            this.docs = new int[scoreDocs.length];
+            this.scores = new float[scoreDocs.length];
+            for (int i = 0; i < scoreDocs.length; i++) {
+                docs[i] = scoreDocs[i].doc;
+                scores[i] = scoreDocs[i].score;
+            }
+        }
+    }
+
+    public static final class Key {
+        private final String analyzer;
+        private final String similarity;
+        private final int topK;
+        private final Query query;
+
+        private Key(String analyzer, String similarity, int topK, Query query) {
+            this.analyzer = analyzer;
+            this.similarity = similarity;
+            this.topK = topK;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return topK == other.topK && analyzer.equals(other.analyzer) && similarity.equals(other.similarity)
+                    && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((analyzer.hashCode() * 31 + similarity.hashCode()) * 31 + topK) * 31 + query.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return analyzer + '|' + similarity + '|' + topK + '|' + query;
+        }
+    }
+
+    private final Map<Key, Hits> entries;
+    private Object readerKey;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public QueryResultCache(final int maxEntries) {
+        this.entries = new LinkedHashMap<Key, Hits>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Hits> eldest) {
+                if (size() > maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /* Key for a compiled query. The query holds the analyzed terms per field, the boosts
+     * and tie breaker of multi-field queries, the coord setting and the MatchAllDocsQuery
+     * clause of exhaustive ranking, so no analysis is repeated for the key.
+     */
+    public static Key key(Analyzer analyzer, Similarity similarity, int topK, Query query) {
+        return new Key(analyzer.getClass().getName(), similarity.getClass().getName() + ' ' + similarity, topK, query);
+    }
+
+    public synchronized Hits get(IndexReader reader, Key key) {
+        checkReader(reader);
+        Hits cached = entries.get(key);
+        if (cached == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return cached;
+    }
+
+    public synchronized void put(IndexReader reader, Key key, Hits value) {
+        checkReader(reader);
+        entries.put(key, value);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "query cache: " + entries.size() + " entries, hits: " + hits + ", misses: " + misses
+                + ", evictions: " + evictions + ", invalidations: " + invalidations;
+    }
+
+    private void checkReader(IndexReader reader) {
+        Object key = reader.getCombinedCoreAndDeletesKey();
+        if (key != readerKey) {
+            if (readerKey != null) {
+                entries.clear();
+                invalidations++;
+            }
+            readerKey = key;
+        }
+    }
+}
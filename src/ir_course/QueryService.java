@@ -0,0 +1,91 @@
+/*
+ * Runs batches of queries concurrently against a shared searcher
+ */
+package ir_course;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Executes every query of a batch as its own task on a fixed thread pool. Each task
+ * acquires the shared searcher from the SearcherLifecycle and releases it when done, so
+ * a refresh in between batches (or during one) is safe.
+ *
+ * Queries have to be built by the caller, e.g. by a QueryCompiler, whose compiled plans
+ * several threads can search at once. LuceneSearchApp runs the queries of every topic
+ * through it with queryThreads=N.
+ */
+public class QueryService implements Closeable {
+
+    public static class BatchResult {
+        public final TopDocs[] topDocs;
+        // nanoseconds from acquiring the searcher to the top hits, of every query in batch order
+        public final long[] latencies;
+        public final LatencyStats latency;
+
+        BatchResult(TopDocs[] topDocs, long[] latencies, LatencyStats latency) {
+            this.topDocs = topDocs;
+            this.latencies = latencies;
+            this.latency = latency;
+        }
+    }
+
+    private final SearcherLifecycle searchers;
+    private final ExecutorService pool;
+
+    public QueryService(SearcherLifecycle searchers, int threads) {
+        this.searchers = searchers;
+        this.pool = Executors.newFixedThreadPool(threads);
+    }
+
+    // runs all queries and returns their top n hits in the order of the batch
+    public BatchResult run(List<? extends Query> queries, final int n) {
+        final long[] latencies = new long[queries.size()];
+        List<Future<TopDocs>> futures = new ArrayList<>(queries.size());
+        long start = System.nanoTime();
+        for (int i = 0; i < queries.size(); i++) {
+            final int index = i;
+            final Query query = queries.get(i);
+            futures.add(pool.submit(new Callable<TopDocs>() {
+                @Override
+                public TopDocs call() throws Exception {
+                    long queryStart = System.nanoTime();
+                    IndexSearcher searcher = searchers.acquire();
+                    try {
+                        return searcher.search(query, n);
+                    } finally {
+                        searchers.release(searcher);
+                        latencies[index] = System.nanoTime() - queryStart;
+                    }
+                }
+            }));
+        }
+        TopDocs[] topDocs = new TopDocs[futures.size()];
+        try {
+            for (int i = 0; i < topDocs.length; i++) {
+                topDocs[i] = futures.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Query failed", e.getCause());
+        }
+        return new BatchResult(topDocs, latencies, new LatencyStats(latencies, System.nanoTime() - start));
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Titles of a ranked result list, loaded on demand
+ */
+package ir_course;
+
+import org.apache.lucene.search.IndexSearcher;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * The list returned by LuceneSearchApp.search. Only the doc ids are kept; the stored title
+ * of a hit is read when get() is called, e.g. when the result is printed. Doc ids are only
+ * valid for the reader the search ran on, so reading a title after the shared searcher
+ * has been refreshed fails instead of returning the wrong document. Every read is reported
+ * to the query metrics, if any, as a LOAD phase and one DOCS_LOADED.
+ */
+class ResultTitles extends AbstractList<String> {
+
+    private static final Set<String> TITLE_FIELD = Collections.singleton(LuceneSearchApp.TITLE);
+
+    private final SearcherLifecycle searchers;
+    private final Object reader;
+    private final int[] docIds;
+    private final QueryMetrics metrics;
+
+    ResultTitles(SearcherLifecycle searchers, IndexSearcher searcher, int[] docIds, QueryMetrics metrics) {
+        this.searchers = searchers;
+        this.reader = searcher.getIndexReader();
+        this.docIds = docIds;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String get(int index) {
+        IndexSearcher searcher = searchers.acquire();
+        try {
+            if (searcher.getIndexReader() != reader) {
+                throw new IllegalStateException("The index was reopened after the search");
+            }
+            long start = System.nanoTime();
+            String title = searcher.doc(docIds[index], TITLE_FIELD).get(LuceneSearchApp.TITLE);
+            if (metrics != null) {
+                metrics.record(QueryMetrics.Phase.LOAD, System.nanoTime() - start);
+                metrics.count(QueryMetrics.Counter.DOCS_LOADED, 1);
+            }
+            return title;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            searchers.release(searcher);
+        }
+    }
+
+    @Override
+    public int size() {
+        return docIds.length;
+    }
+}
@@ -1,7 +1,13 @@
 package ir_course;
 
 
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by martin on 4/9/14.
@@ -23,15 +29,25 @@ public class SearchSuite {
     private static final String[] moreLikeVsmStandard = {corpusPath, MORELIKEVSM}; 
     private static final String[] moreLikeVsmSimple = { corpusPath, MORELIKEVSM, SIMPLE };
     private static final String[] moreLikeVsmPorter = { corpusPath, MORELIKEVSM, PORTER };
+    private static String[] extraArgs = {};
+    // JSON object of every run that recorded query metrics, written at the end
+    private static final List<String> metricsJson = new ArrayList<>();
     
     public static void main(String[] args) {
         LuceneSearchApp app = new LuceneSearchApp();
+        // any arguments (e.g. exhaustive) are passed on to every run
+        extraArgs = args;
         
 
 //        runCombination(app, "BM25 vs MoreLikeVSM (both using StandardAnalyzer)", "moreLikeVSM, BM25", moreLikeVsmStandard, bm25Standard);
         runCombination(app, "StandardAnalyzer vs SimpleAnalyzer vs PorterAnalyzer", "StandardAnalyzer,SimpleAnalyzer,Porter stemming",defaults, vsmSimple, vsmPorter);
 //        runCombination(app, "Default vs MoreLikeVSM", "Default,MoreLikeVSM", defaults, moreLikeVsmSimple);
 //        runCombination(app, "BM25 vs VSM", defaults, bm25Standard, bm25Porter, bm25Simple, vsmSimple, vsmPorter);
+
+        String metricsFile = LuceneSearchApp.stringArgument(Arrays.asList(args), LuceneSearchApp.QUERY_METRICS, null);
+        if (metricsFile != null) {
+            writeMetrics(metricsFile);
+        }
     }
     
     public static void runCombination(LuceneSearchApp app, String label, String legend, String[]... tests) {
@@ -44,11 +60,42 @@ public class SearchSuite {
     	
     	System.out.print(plotTex);
 
-    	for( String[] test : tests) {
-    		app.main(test);
+    	String[][] testArgs = new String[tests.length][];
+    	for(int i = 0; i < tests.length; i++) {
+    		testArgs[i] = Arrays.copyOf(tests[i], tests[i].length + extraArgs.length);
+    		System.arraycopy(extraArgs, 0, testArgs[i], tests[i].length, extraArgs.length);
+    	}
+    	// the runs are independent, only their output has to stay in order
+    	ExperimentRunner runner = new ExperimentRunner(Runtime.getRuntime().availableProcessors());
+    	for(String plot : runner.run(testArgs)) {
+    		System.out.println(plot);
+    	}
+    	for (Map.Entry<String, QueryMetrics> e : runner.queryMetrics().entrySet()) {
+    		if (e.getValue() instanceof HistogramMetrics) {
+    			metricsJson.add("{\"combination\": " + quote(label) + ", \"configuration\": " + quote(e.getKey())
+    					+ ", \"metrics\": " + ((HistogramMetrics) e.getValue()).toJson() + "}");
+    		}
     	}
 
     	System.out.print("\n\\legend{"+legend);
     	System.out.print( "}\n\\end{axis} \n\\end{tikzpicture}\n\n");        
     }
+
+    // the query metrics of all runs as a JSON array, one object per configuration
+    private static void writeMetrics(String path) {
+        try (Writer out = new FileWriter(path)) {
+            out.write("[\n");
+            for (int i = 0; i < metricsJson.size(); i++) {
+                out.write("  " + metricsJson.get(i) + (i + 1 < metricsJson.size() ? "," : "") + "\n");
+            }
+            out.write("]\n");
+        } catch (IOException e) {
+            System.err.println("Error writing query metrics!");
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * Long-lived, shared IndexSearcher for one index directory
+ */
+package ir_course;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.Directory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Wraps a SearcherManager so that all queries share one reader. Every searcher must be
+ * returned with release() after use; refresh() picks up changes made to the index
+ * and close() releases the reader once no query holds it anymore. The directory belongs
+ * to the caller and stays open, so a RAM index survives the searcher.
+ *
+ * New searchers get the configured similarity and are passed to the warmer before they
+ * become visible to queries.
+ */
+public class SearcherLifecycle implements Closeable {
+
+    public interface Warmer {
+        void warm(IndexSearcher searcher) throws IOException;
+    }
+
+    private final ReferenceManager<IndexSearcher> manager;
+
+    public SearcherLifecycle(Directory directory, Similarity similarity, Warmer warmer) throws IOException {
+        this(directory, similarity, warmer, null);
+    }
+
+    // with a non-null executor every query searches the index segments in parallel on it
+    public SearcherLifecycle(Directory directory, Similarity similarity, Warmer warmer,
+                             ExecutorService executor) throws IOException {
+        this.manager = new SearcherManager(directory, factory(similarity, warmer, executor));
+    }
+
+    /* Near-real-time searchers opened from the writer: refresh() makes everything added to
+     * the writer so far searchable without a commit.
+     */
+    public SearcherLifecycle(IndexWriter writer, Similarity similarity, Warmer warmer,
+                             ExecutorService executor) throws IOException {
+        this.manager = new SearcherManager(writer, true, factory(similarity, warmer, executor));
+    }
+
+    /* ShardedSearchers over one reader per shard directory, the executor runs the shards of
+     * every query concurrently. refresh() reopens the shards that have changed.
+     */
+    public SearcherLifecycle(Directory[] shards, Similarity similarity, Warmer warmer,
+                             ExecutorService executor) throws IOException {
+        this.manager = new ShardedSearcherManager(shards, similarity, warmer, executor);
+    }
+
+    private static SearcherFactory factory(final Similarity similarity, final Warmer warmer,
+                                           final ExecutorService executor) {
+        return new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+                IndexSearcher searcher = new IndexSearcher(reader, executor);
+                searcher.setSimilarity(similarity);
+                if (warmer != null) {
+                    warmer.warm(searcher);
+                }
+                return searcher;
+            }
+        };
+    }
+
+    private static final class ShardedSearcherManager extends ReferenceManager<IndexSearcher> {
+
+        private final Similarity similarity;
+        private final Warmer warmer;
+        private final ExecutorService executor;
+
+        ShardedSearcherManager(Directory[] shards, Similarity similarity, Warmer warmer,
+                               ExecutorService executor) throws IOException {
+            this.similarity = similarity;
+            this.warmer = warmer;
+            this.executor = executor;
+            IndexReader[] readers = new IndexReader[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                readers[i] = DirectoryReader.open(shards[i]);
+            }
+            current = newSearcher(readers);
+        }
+
+        // the new MultiReader holds its own reference to every shard reader
+        private IndexSearcher newSearcher(IndexReader[] readers) throws IOException {
+            ShardedSearcher searcher = ShardedSearcher.open(readers, executor);
+            for (IndexReader reader : readers) {
+                reader.decRef();
+            }
+            searcher.setSimilarity(similarity);
+            if (warmer != null) {
+                warmer.warm(searcher);
+            }
+            return searcher;
+        }
+
+        @Override
+        protected IndexSearcher refreshIfNeeded(IndexSearcher referenceToRefresh) throws IOException {
+            List<IndexReaderContext> shards = referenceToRefresh.getIndexReader().getContext().children();
+            IndexReader[] readers = new IndexReader[shards.size()];
+            boolean changed = false;
+            for (int i = 0; i < readers.length; i++) {
+                DirectoryReader shard = (DirectoryReader) shards.get(i).reader();
+                DirectoryReader reopened = DirectoryReader.openIfChanged(shard);
+                if (reopened == null) {
+                    // unchanged shards are shared with the old searcher
+                    shard.incRef();
+                    readers[i] = shard;
+                } else {
+                    readers[i] = reopened;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                for (IndexReader reader : readers) {
+                    reader.decRef();
+                }
+                return null;
+            }
+            return newSearcher(readers);
+        }
+
+        @Override
+        protected boolean tryIncRef(IndexSearcher reference) {
+            return reference.getIndexReader().tryIncRef();
+        }
+
+        @Override
+        protected void decRef(IndexSearcher reference) throws IOException {
+            reference.getIndexReader().decRef();
+        }
+    }
+
+    public IndexSearcher acquire() {
+        return manager.acquire();
+    }
+
+    public void release(IndexSearcher searcher) {
+        try {
+            manager.release(searcher);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // reopens the reader if the index has changed, waiting for a concurrent refresh to finish
+    public void refresh() throws IOException {
+        manager.maybeRefreshBlocking();
+    }
+
+    @Override
+    public void close() throws IOException {
+        manager.close();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Hash-partitions a collection into shards and indexes them in parallel
+ */
+package ir_course;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.apache.lucene.index.IndexWriter;
+
+import java.util.List;
+
+/**
+ * Every document goes to the shard given by the consistent hash of its id, so the same
+ * document always lands in the same shard and growing the shard count moves as few
+ * documents as possible. Each shard has its own IndexWriter and indexing thread and keeps
+ * the corpus order of its documents; the position of every document in the whole corpus is
+ * indexed as the ORDER doc value, so that ShardedSearcher can rank equal scores as an
+ * unsharded index does.
+ */
+public class ShardedIndexer {
+
+    private static final HashFunction HASH = Hashing.murmur3_32();
+
+    private final IndexWriter[] writers;
+
+    public ShardedIndexer(IndexWriter[] writers) {
+        this.writers = writers;
+    }
+
+    public static int shard(DocumentInCollection doc, int shards) {
+        return Hashing.consistentHash(HASH.hashString(doc.getId(), Charsets.UTF_8), shards);
+    }
+
+    // returns once every document has been added to the writer of its shard
+    public void index(List<DocumentInCollection> docs) {
+        int[] shardOf = new int[docs.size()];
+        int[] sizes = new int[writers.length];
+        int position = 0;
+        for (DocumentInCollection doc : docs) {
+            shardOf[position] = shard(doc, writers.length);
+            sizes[shardOf[position++]]++;
+        }
+        final DocumentInCollection[][] partitions = new DocumentInCollection[writers.length][];
+        final int[][] positions = new int[writers.length][];
+        for (int i = 0; i < writers.length; i++) {
+            partitions[i] = new DocumentInCollection[sizes[i]];
+            positions[i] = new int[sizes[i]];
+            sizes[i] = 0;
+        }
+        position = 0;
+        for (DocumentInCollection doc : docs) {
+            int shard = shardOf[position];
+            partitions[shard][sizes[shard]] = doc;
+            positions[shard][sizes[shard]++] = position++;
+        }
+
+        final IndexingWorkers workers = new IndexingWorkers("shard-indexer");
+        for (int i = 0; i < writers.length; i++) {
+            final IndexWriter writer = writers[i];
+            final DocumentInCollection[] partition = partitions[i];
+            final int[] partitionPositions = positions[i];
+            workers.start(new IndexingWorkers.Task() {
+                @Override
+                public void run(DocumentTemplate template) throws Exception {
+                    for (int j = 0; j < partition.length; j++) {
+                        if (workers.failed()) return;
+                        writer.addDocument(template.fill(partition[j], partitionPositions[j]));
+                    }
+                }
+            });
+        }
+        workers.join();
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Fan-out search over the shards of a hash-partitioned index
+ */
+package ir_course;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.TopDocs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Searches a MultiReader whose sub-readers are the shards, as if every shard were a separate
+ * server: search() first gathers the term and collection statistics of the query from all
+ * shards, then runs the query on every shard concurrently with those global statistics, and
+ * merges the shards' top hits. Every document therefore gets exactly the score it has in an
+ * unsharded index of the same documents. Equal scores are ordered by the ORDER doc value,
+ * the position of the document in the corpus that ShardedIndexer indexes, so the ranking is
+ * the same as that of an unsharded index built in corpus order; shards without ORDER are
+ * merged with TopDocs.merge, which orders equal scores by shard.
+ *
+ * Doc ids of the results are those of the MultiReader (shard doc id plus the shard's doc
+ * base), so stored fields, judgments and the query cache work on getIndexReader() as
+ * usual. Only search(Query, int) and search(Query, Filter, int) fan out; other methods
+ * search the MultiReader directly, which gives the same scores.
+ */
+public class ShardedSearcher extends IndexSearcher {
+
+    private final IndexReader[] shards;
+    private final int[] docStarts;
+    // corpus position by shard doc id of every shard, null if any shard lacks them
+    private final NumericDocValues[] orders;
+    private final ExecutorService executor;
+
+    // reader must be a MultiReader over the shards; a null executor searches them one after the other
+    public ShardedSearcher(IndexReader reader, ExecutorService executor) {
+        super(reader);
+        List<IndexReaderContext> children = reader.getContext().children();
+        this.shards = new IndexReader[children.size()];
+        this.docStarts = new int[children.size()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = children.get(i).reader();
+            docStarts[i] = children.get(i).docBaseInParent;
+        }
+        this.orders = orders(shards);
+        this.executor = executor;
+    }
+
+    // a searcher over new MultiReader(shards, false)
+    public static ShardedSearcher open(IndexReader[] shards, ExecutorService executor) {
+        return new ShardedSearcher(new MultiReader(shards, false), executor);
+    }
+
+    private static NumericDocValues[] orders(IndexReader[] shards) {
+        NumericDocValues[] orders = new NumericDocValues[shards.length];
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                orders[i] = MultiDocValues.getNumericValues(shards[i], LuceneSearchApp.ORDER);
+                if (orders[i] == null && shards[i].maxDoc() > 0) {
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading the corpus order of the shards!");
+            throw new RuntimeException(e);
+        }
+        return orders;
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public TopDocs search(Query query, int n) throws IOException {
+        return search(query, null, n);
+    }
+
+    @Override
+    public TopDocs search(Query query, final Filter filter, final int n) throws IOException {
+        final Query rewritten = rewrite(query);
+        Set<Term> terms = new HashSet<>();
+        rewritten.extractTerms(terms);
+        final GlobalStatistics stats = new GlobalStatistics(terms);
+
+        TopDocs[] shardHits = new TopDocs[shards.length];
+        if (executor == null) {
+            for (int i = 0; i < shards.length; i++) {
+                shardHits[i] = new ShardSearcher(shards[i], stats).search(rewritten, filter, n);
+            }
+        } else {
+            List<Future<TopDocs>> futures = new ArrayList<>(shards.length);
+            for (final IndexReader shard : shards) {
+                futures.add(executor.submit(new Callable<TopDocs>() {
+                    @Override
+                    public TopDocs call() throws IOException {
+                        return new ShardSearcher(shard, stats).search(rewritten, filter, n);
+                    }
+                }));
+            }
+            for (int i = 0; i < shards.length; i++) {
+                try {
+                    shardHits[i] = futures.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new IOException("Searching shard " + i + " failed", e.getCause());
+                }
+            }
+        }
+
+        TopDocs merged = orders == null ? TopDocs.merge(null, n, shardHits) : merge(n, shardHits);
+        for (ScoreDoc hit : merged.scoreDocs) {
+            hit.doc += docStarts[hit.shardIndex];
+        }
+        return merged;
+    }
+
+    /* The n best hits of all shards by score and then by corpus position, with shardIndex
+     * set and doc ids still those of the shard. The hits of a shard are already in this
+     * order: its writer adds the documents in corpus order on one thread and only merges
+     * adjacent segments (LuceneSearchApp.indexSharded), so its doc ids follow the corpus.
+     */
+    private TopDocs merge(int n, TopDocs[] shardHits) {
+        int totalHits = 0;
+        int available = 0;
+        float maxScore = Float.NaN;
+        for (TopDocs hits : shardHits) {
+            totalHits += hits.totalHits;
+            available += hits.scoreDocs.length;
+            if (hits.scoreDocs.length > 0 && (Float.isNaN(maxScore) || hits.getMaxScore() > maxScore)) {
+                maxScore = hits.getMaxScore();
+            }
+        }
+        ScoreDoc[] merged = new ScoreDoc[Math.min(n, available)];
+        int[] next = new int[shardHits.length];
+        for (int k = 0; k < merged.length; k++) {
+            int best = -1;
+            for (int i = 0; i < shardHits.length; i++) {
+                if (next[i] < shardHits[i].scoreDocs.length
+                        && (best < 0 || before(i, shardHits[i].scoreDocs[next[i]], best, shardHits[best].scoreDocs[next[best]]))) {
+                    best = i;
+                }
+            }
+            ScoreDoc hit = shardHits[best].scoreDocs[next[best]++];
+            hit.shardIndex = best;
+            merged[k] = hit;
+        }
+        return new TopDocs(totalHits, merged, maxScore);
+    }
+
+    private boolean before(int shard, ScoreDoc hit, int otherShard, ScoreDoc other) {
+        if (hit.score != other.score) {
+            return hit.score > other.score;
+        }
+        return orders[shard].get(hit.doc) < orders[otherShard].get(other.doc);
+    }
+
+    /* Statistics summed over all shards, gathered once per query for the terms it contains;
+     * a term that is only met while a shard builds its weight is summed on demand.
+     */
+    private final class GlobalStatistics {
+
+        private final Map<Term, TermStatistics> terms = new HashMap<>();
+        private final Map<String, CollectionStatistics> fields = new HashMap<>();
+
+        GlobalStatistics(Set<Term> queryTerms) throws IOException {
+            for (Term term : queryTerms) {
+                terms.put(term, sum(term));
+                if (!fields.containsKey(term.field())) {
+                    fields.put(term.field(), sum(term.field()));
+                }
+            }
+        }
+
+        TermStatistics termStatistics(Term term) throws IOException {
+            TermStatistics stats = terms.get(term);
+            return stats != null ? stats : sum(term);
+        }
+
+        CollectionStatistics collectionStatistics(String field) throws IOException {
+            CollectionStatistics stats = fields.get(field);
+            return stats != null ? stats : sum(field);
+        }
+
+        // as IndexSearcher.termStatistics over all shards, -1 if any shard does not know
+        private TermStatistics sum(Term term) throws IOException {
+            long docFreq = 0;
+            long totalTermFreq = 0;
+            for (IndexReader shard : shards) {
+                TermContext context = TermContext.build(shard.getContext(), term, false);
+                docFreq += context.docFreq();
+                totalTermFreq = add(totalTermFreq, context.totalTermFreq());
+            }
+            return new TermStatistics(term.bytes(), docFreq, totalTermFreq);
+        }
+
+        // as IndexSearcher.collectionStatistics over all shards
+        private CollectionStatistics sum(String field) throws IOException {
+            long maxDoc = 0;
+            long docCount = 0;
+            long sumTotalTermFreq = 0;
+            long sumDocFreq = 0;
+            for (IndexReader shard : shards) {
+                maxDoc += shard.maxDoc();
+                Terms terms = MultiFields.getTerms(shard, field);
+                if (terms != null) {
+                    docCount = add(docCount, terms.getDocCount());
+                    sumTotalTermFreq = add(sumTotalTermFreq, terms.getSumTotalTermFreq());
+                    sumDocFreq = add(sumDocFreq, terms.getSumDocFreq());
+                }
+            }
+            return new CollectionStatistics(field, maxDoc, docCount, sumTotalTermFreq, sumDocFreq);
+        }
+
+        private long add(long sum, long value) {
+            return sum == -1 || value == -1 ? -1 : sum + value;
+        }
+    }
+
+    // one shard, scoring with the global statistics of the current query
+    private final class ShardSearcher extends IndexSearcher {
+
+        private final GlobalStatistics stats;
+
+        ShardSearcher(IndexReader shard, GlobalStatistics stats) {
+            super(shard);
+            this.stats = stats;
+            setSimilarity(ShardedSearcher.this.getSimilarity());
+        }
+
+        @Override
+        public TermStatistics termStatistics(Term term, TermContext context) throws IOException {
+            return stats.termStatistics(term);
+        }
+
+        @Override
+        public CollectionStatistics collectionStatistics(String field) throws IOException {
+            return stats.collectionStatistics(field);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Thread-safe Porter stemming with a shared cache from surface form to stem
+ */
+package ir_course;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.en.PorterStemFilter;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stems with the same algorithm as Lucene's PorterStemFilter, which PorterAnalyzer has
+ * always used, so cached and uncached analysis give identical terms. Stemmers are not
+ * thread-safe, so every thread gets its own; the cache is shared by all threads.
+ *
+ * The cache is bounded: once it holds maxEntries words it stops taking new ones. The
+ * vocabulary of the abstracts is heavily skewed, so the frequent words are in the cache
+ * long before it fills up. Hits and misses are counted in atomics shared by all threads,
+ * so the stemmer of a thread is only referenced by its ThreadLocal and goes away with it.
+ * Words can be looked up straight from a token's char buffer, so a cached word costs no
+ * allocation; a String is only built for a word that has to be stemmed.
+ */
+public class StemmingService {
+
+    public static final int DEFAULT_CACHE_SIZE = 1 << 16;
+
+    // shared by all PorterAnalyzers
+    public static final StemmingService PORTER = new StemmingService(DEFAULT_CACHE_SIZE);
+
+    private final int maxEntries;
+    private final ConcurrentMap<Word, String> cache = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private final ThreadLocal<WordStemmer> stemmers = new ThreadLocal<WordStemmer>() {
+        @Override
+        protected WordStemmer initialValue() {
+            return new WordStemmer();
+        }
+    };
+
+    public StemmingService(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    // the stem of a lower case word
+    public String stem(String word) {
+        return stem(word.toCharArray(), word.length());
+    }
+
+    // the stem of the lower case word in buffer[0, length), e.g. a CharTermAttribute
+    public String stem(char[] buffer, int length) {
+        WordStemmer stemmer = stemmers.get();
+        String stem = cache.get(stemmer.probe.wrap(buffer, length));
+        if (stem != null) {
+            hits.incrementAndGet();
+            return stem;
+        }
+        misses.incrementAndGet();
+        stem = stemmer.stem(new String(buffer, 0, length));
+        if (size.get() < maxEntries && cache.putIfAbsent(new Word().wrap(Arrays.copyOf(buffer, length), length), stem) == null) {
+            size.incrementAndGet();
+        }
+        return stem;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double hitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("stem cache: %d words, hits: %d, misses: %d, hit rate: %.3f",
+                size.get(), getHits(), getMisses(), hitRate());
+    }
+
+    /* Lucene's Porter stemmer is only reachable through PorterStemFilter, so a word is
+     * stemmed by passing it through a filter over a one-token stream.
+     */
+    private static class WordStemmer {
+
+        private final WordStream word = new WordStream();
+        private final TokenStream filter = new PorterStemFilter(word);
+        private final CharTermAttribute termAtt = filter.getAttribute(CharTermAttribute.class);
+        // wraps the buffer of every lookup, never put into the cache
+        final Word probe = new Word();
+
+        String stem(String text) {
+            try {
+                word.text = text;
+                filter.reset();
+                filter.incrementToken();
+                return termAtt.toString();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /* A word as the first length chars of an array: the probe of a thread wraps the
+     * caller's buffer for one lookup, cache keys own a copy that is never changed.
+     */
+    private static final class Word {
+
+        private char[] chars;
+        private int length;
+        private int hash;
+
+        Word wrap(char[] chars, int length) {
+            this.chars = chars;
+            this.length = length;
+            int h = 0;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + chars[i];
+            }
+            this.hash = h;
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Word)) {
+                return false;
+            }
+            Word other = (Word) o;
+            if (other.length != length || other.hash != hash) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (other.chars[i] != chars[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class WordStream extends TokenStream {
+
+        private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+        private String text;
+        private boolean done;
+
+        @Override
+        public void reset() {
+            done = false;
+        }
+
+        @Override
+        public boolean incrementToken() {
+            if (done) {
+                return false;
+            }
+            clearAttributes();
+            termAtt.setEmpty().append(text);
+            done = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Where an index lives while it is written and searched
+ */
+package ir_course;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.RAMDirectory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * FS lets Lucene pick the file system directory for the platform (the behaviour before
+ * storage modes existed; on 64-bit JVMs this is usually memory mapping already). MMAP
+ * always memory-maps the index files, for read-heavy serving. RAM keeps the whole index
+ * on the heap and never touches disk, for short experiment runs: such an index lives only
+ * as long as the LuceneSearchApp instance that built it and has no manifest.
+ */
+public enum StorageMode {
+    FS,
+    MMAP,
+    RAM;
+
+    public Directory open(File path) throws IOException {
+        switch (this) {
+            case MMAP:
+                return new MMapDirectory(path);
+            case RAM:
+                return new RAMDirectory();
+            default:
+                return FSDirectory.open(path);
+        }
+    }
+
+    public boolean isPersistent() {
+        return this != RAM;
+    }
+
+    // "fs", "mmap" or "ram" as given on the command line
+    public static StorageMode fromArgument(String name) {
+        return valueOf(name.toUpperCase());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Base for similarities that score from precomputed per-field tables
+ */
+package ir_course;
+
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.similarities.Similarity;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the idf of every document frequency up to IDF_TABLE_SIZE, and optionally a table
+ * indexed by norm byte, per field; the idf of more frequent terms is computed every time.
+ * The tables belong to one set of collection statistics and are rebuilt when a reopened
+ * reader changes them. precompute() builds them for every field of the term dictionary
+ * when a searcher opens, so queries only read them. Subclasses compute the entries with
+ * the formulas of the similarity they replace, so the values are exactly the same.
+ */
+abstract class TableDrivenSimilarity extends Similarity {
+
+    /* Most terms are rare, so a table of the first few thousand document frequencies
+     * holds nearly every idf a query needs, whatever the size of the collection.
+     */
+    static final int IDF_TABLE_SIZE = 1 << 12;
+
+    static final class FieldTables {
+        final long maxDoc;
+        final long sumTotalTermFreq;
+        // idf by docFreq below IDF_TABLE_SIZE, all filled before the tables are shared
+        final float[] idf;
+        // by norm byte, null if the similarity has no such table
+        final float[] norms;
+
+        FieldTables(CollectionStatistics stats, float[] idf, float[] norms) {
+            this.maxDoc = stats.maxDoc();
+            this.sumTotalTermFreq = stats.sumTotalTermFreq();
+            this.idf = idf;
+            this.norms = norms;
+        }
+
+        boolean matches(CollectionStatistics stats) {
+            return maxDoc == stats.maxDoc() && sumTotalTermFreq == stats.sumTotalTermFreq();
+        }
+    }
+
+    private final ConcurrentMap<String, FieldTables> tables = new ConcurrentHashMap<>();
+
+    protected abstract float computeIdf(CollectionStatistics collectionStats, long docFreq);
+
+    // table indexed by norm byte for the field, or null
+    protected float[] computeNormTable(CollectionStatistics collectionStats) {
+        return null;
+    }
+
+    /* Builds the tables of every field in the term dictionary of the searcher's reader, with
+     * the collection statistics the searcher gives its queries. Called by the warmer of a
+     * new searcher, before any query uses it.
+     */
+    void precompute(IndexSearcher searcher) throws IOException {
+        Fields fields = MultiFields.getFields(searcher.getIndexReader());
+        if (fields == null) {
+            return;
+        }
+        for (String field : fields) {
+            tables(searcher.collectionStatistics(field));
+        }
+    }
+
+    // a field the warmer did not see (e.g. a searcher without warmer) gets its tables here
+    FieldTables tables(CollectionStatistics collectionStats) {
+        FieldTables fieldTables = tables.get(collectionStats.field());
+        if (fieldTables == null || !fieldTables.matches(collectionStats)) {
+            float[] idf = new float[(int) Math.min(collectionStats.maxDoc() + 1, IDF_TABLE_SIZE)];
+            for (int docFreq = 0; docFreq < idf.length; docFreq++) {
+                idf[docFreq] = computeIdf(collectionStats, docFreq);
+            }
+            fieldTables = new FieldTables(collectionStats, idf, computeNormTable(collectionStats));
+            tables.put(collectionStats.field(), fieldTables);
+        }
+        return fieldTables;
+    }
+
+    // idf of a term, or the sum over the terms of a phrase in their order, as both
+    // TFIDFSimilarity and BM25Similarity define it
+    float idf(CollectionStatistics collectionStats, FieldTables fieldTables, TermStatistics... termStats) {
+        if (termStats.length == 1) {
+            return idf(collectionStats, fieldTables, termStats[0].docFreq());
+        }
+        float idf = 0.0f;
+        for (TermStatistics stat : termStats) {
+            idf += idf(collectionStats, fieldTables, stat.docFreq());
+        }
+        return idf;
+    }
+
+    private float idf(CollectionStatistics collectionStats, FieldTables fieldTables, long docFreq) {
+        if (docFreq >= fieldTables.idf.length) {
+            return computeIdf(collectionStats, docFreq);
+        }
+        return fieldTables.idf[(int) docFreq];
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Unit tests of the corpus snapshot written next to the indexes
+ */
+package ir_course;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class CorpusSnapshotTest {
+
+    private static final String CORPUS = "<collection>"
+            + "<item id=\"a\"><title>First</title><abstract>one</abstract></item>"
+            + "<item id=\"b\"><title>Second</title><abstract>two</abstract></item>"
+            + "</collection>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File corpus(String xml) throws IOException {
+        File file = folder.newFile("corpus.xml");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(xml);
+        }
+        return file;
+    }
+
+    @Test
+    public void completeCorpusIsWrittenAndLoaded() throws IOException {
+        File corpus = corpus(CORPUS);
+        File snapshot = new File(folder.getRoot(), "corpus.snapshot");
+        assertEquals(2, CorpusSnapshot.documents(corpus.getPath(), snapshot).size());
+        List<DocumentInCollection> loaded = CorpusSnapshot.load(snapshot, IndexManifest.corpusChecksum(corpus));
+        assertEquals(2, loaded.size());
+        assertEquals("Second", loaded.get(1).getTitle());
+    }
+
+    @Test
+    public void truncatedCorpusIsNotWritten() throws IOException {
+        // cut off inside the second item, the first one parses
+        File corpus = corpus(CORPUS.substring(0, CORPUS.indexOf("Second")));
+        File snapshot = new File(folder.getRoot(), "corpus.snapshot");
+        try {
+            CorpusSnapshot.documents(corpus.getPath(), snapshot);
+            fail("a truncated corpus must not parse");
+        } catch (RuntimeException expected) {
+        }
+        assertFalse(snapshot.exists());
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Unit tests of the averaged curves and metrics of Plotter
+ */
+package ir_course;
+
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlotterTest {
+
+    private static final int[] RANKING = {0, 1, 2, 3};
+
+    private static Plotter twoRankings() {
+        FixedBitSet first = new FixedBitSet(RANKING.length);
+        first.set(0);
+        FixedBitSet second = new FixedBitSet(RANKING.length);
+        second.set(1);
+        Plotter plotter = new Plotter("/tmp/");
+        plotter.AddRankingToResults(RANKING, first, 1);
+        plotter.AddRankingToResults(RANKING, second, 1);
+        return plotter;
+    }
+
+    @Test
+    public void metricsIncludeElevenPointAveragePrecision() {
+        // interpolated precision is 1 at every level for the first ranking and 0.5 for the second
+        assertTrue(twoRankings().MetricsAsString(), twoRankings().MetricsAsString().endsWith("11-pt AP=0.7500"));
+    }
+
+    @Test
+    public void interpolatedPlotShowsMeanInterpolatedPrecision() {
+        Plotter plotter = twoRankings();
+        plotter.setInterpolated(true);
+        String plot = plotter.PlotResultsAsStringAddPlotOnly("blue", "*");
+        assertTrue(plot, plot.contains("(0.0,0.75) "));
+        assertTrue(plot, plot.contains("(1.0,0.75) "));
+    }
+
+    @Test
+    public void addResultsSumsTheInterpolatedCurve() {
+        Plotter all = new Plotter("/tmp/");
+        all.AddResults(twoRankings());
+        all.AddResults(twoRankings());
+        assertEquals(twoRankings().MetricsAsString(), all.MetricsAsString());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Unit tests of the evaluation measures
+ */
+package ir_course;
+
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * One ranking of ten documents, of which doc ids 0, 2 and 5 are relevant, out of four
+ * relevant documents in the collection.
+ */
+public class PrecisionRecallTest {
+
+    private static final double DELTA = 1e-9;
+    private static final int[] RANKING = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+    private static final int TOTAL_RELEVANT = 4;
+
+    private static FixedBitSet relevant() {
+        FixedBitSet relevant = new FixedBitSet(RANKING.length);
+        relevant.set(0);
+        relevant.set(2);
+        relevant.set(5);
+        return relevant;
+    }
+
+    @Test
+    public void interpolatedElevenPointIsBestPrecisionAtOrAboveEachLevel() {
+        double[] precision = new double[PrecisionRecall.LEVELS];
+        PrecisionRecall.interpolatedElevenPoint(RANKING, relevant(), TOTAL_RELEVANT, precision);
+        assertArrayEquals(new double[]{1, 1, 1, 2.0 / 3, 2.0 / 3, 2.0 / 3, 0.5, 0.5, 0, 0, 0}, precision, DELTA);
+    }
+
+    @Test
+    public void interpolatedElevenPointReachesFullRecall() {
+        double[] precision = new double[PrecisionRecall.LEVELS];
+        PrecisionRecall.interpolatedElevenPoint(RANKING, relevant(), 3, precision);
+        assertEquals(0.5, precision[10], DELTA);
+        for (int i = 1; i < precision.length; i++) {
+            assertTrue("level " + i, precision[i] <= precision[i - 1]);
+        }
+    }
+
+    @Test
+    public void interpolatedElevenPointOverwritesTheArray() {
+        double[] precision = {9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9};
+        PrecisionRecall.interpolatedElevenPoint(RANKING, new FixedBitSet(RANKING.length), TOTAL_RELEVANT, precision);
+        assertArrayEquals(new double[PrecisionRecall.LEVELS], precision, DELTA);
+    }
+
+    @Test
+    public void elevenPointKeepsThePlotterDefinition() {
+        double[] precision = new double[PrecisionRecall.LEVELS];
+        int reached = PrecisionRecall.elevenPoint(RANKING, relevant(), TOTAL_RELEVANT, precision);
+        assertEquals(3, reached);
+        assertArrayEquals(new double[]{1, 2.0 / 3, 0.5, 0, 0, 0, 0, 0, 0, 0, 0}, precision, DELTA);
+    }
+
+    @Test
+    public void averagePrecisionCountsMissingRelevantDocuments() {
+        assertEquals((1 + 2.0 / 3 + 3.0 / 6) / 4, PrecisionRecall.averagePrecision(RANKING, relevant(), TOTAL_RELEVANT), DELTA);
+        assertEquals(0.0, PrecisionRecall.averagePrecision(RANKING, relevant(), 0), DELTA);
+    }
+
+    @Test
+    public void precisionAtCountsMissingRanksAsNonRelevant() {
+        assertEquals(0.4, PrecisionRecall.precisionAt(5, RANKING, relevant()), DELTA);
+        assertEquals(3.0 / 20, PrecisionRecall.precisionAt(20, RANKING, relevant()), DELTA);
+        assertEquals(0.0, PrecisionRecall.precisionAt(0, RANKING, relevant()), DELTA);
+    }
+
+    @Test
+    public void rPrecisionIsPrecisionAtTotalRelevant() {
+        assertEquals(0.5, PrecisionRecall.rPrecision(RANKING, relevant(), TOTAL_RELEVANT), DELTA);
+    }
+
+    @Test
+    public void ndcgAtDividesByTheIdealRanking() {
+        double dcg = 1 + 1 / log2(4) + 1 / log2(7);
+        double ideal = 1 + 1 / log2(3) + 1 / log2(4) + 1 / log2(5);
+        assertEquals(dcg / ideal, PrecisionRecall.ndcgAt(10, RANKING, relevant(), TOTAL_RELEVANT), DELTA);
+        assertEquals(1.0, PrecisionRecall.ndcgAt(1, RANKING, relevant(), TOTAL_RELEVANT), DELTA);
+        assertEquals(0.0, PrecisionRecall.ndcgAt(10, RANKING, relevant(), 0), DELTA);
+    }
+
+    private static double log2(double x) {
+        return Math.log(x) / Math.log(2);
+    }
+}
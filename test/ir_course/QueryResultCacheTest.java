@@ -0,0 +1,52 @@
+/*
+ * Unit tests of the keys of QueryResultCache
+ */
+package ir_course;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class QueryResultCacheTest {
+
+    private final Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_42);
+    private final Similarity similarity = new DefaultSimilarity();
+
+    private static BooleanQuery query(boolean disableCoord) {
+        BooleanQuery query = new BooleanQuery(disableCoord);
+        query.add(new TermQuery(new Term("abstract", "face")), BooleanClause.Occur.SHOULD);
+        query.add(new TermQuery(new Term("abstract", "recognition")), BooleanClause.Occur.SHOULD);
+        return query;
+    }
+
+    @Test
+    public void equalQueriesShareAKey() {
+        QueryResultCache.Key key = QueryResultCache.key(analyzer, similarity, 10, query(false));
+        assertEquals(key, QueryResultCache.key(analyzer, similarity, 10, query(false)));
+        assertEquals(key.hashCode(), QueryResultCache.key(analyzer, similarity, 10, query(false)).hashCode());
+    }
+
+    @Test
+    public void coordIsPartOfTheKey() {
+        // both print the same, only equals tells them apart
+        assertEquals(query(false).toString(), query(true).toString());
+        assertFalse(QueryResultCache.key(analyzer, similarity, 10, query(false))
+                .equals(QueryResultCache.key(analyzer, similarity, 10, query(true))));
+    }
+
+    @Test
+    public void topKIsPartOfTheKey() {
+        assertFalse(QueryResultCache.key(analyzer, similarity, 10, query(false))
+                .equals(QueryResultCache.key(analyzer, similarity, 20, query(false))));
+    }
+}